@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Writes batches of encoded bytes to files on a dedicated thread.
+// Producers hand over full byte buffers through a bounded queue, so they block only when the
+// disk falls behind by more than queueCapacity batches, and written buffers are recycled.
+class AsyncFileWriter {
+    private static final Batch END = new Batch(null, null, 0);
+
+    private final int bufferSize;
+    private final BlockingQueue<Batch> batches;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final List<FileChannel> channels = new ArrayList<>();
+    private final Map<FileChannel, OpenFile> files = new ConcurrentHashMap<>();
+    private final Thread writerThread;
+    private volatile IOException failure;
+    private volatile long writeNanos = 0;       // time spent in writes, only updated by the writer thread
+
+    AsyncFileWriter(int bufferSize, int queueCapacity){
+        this.bufferSize = bufferSize;
+        this.batches = new ArrayBlockingQueue<>(queueCapacity);
+        this.freeBuffers = new ArrayBlockingQueue<>(queueCapacity + 1);
+
+        this.writerThread = new Thread(this::writeBatches, "output-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    // Opens (truncating) a file that batches can be written to
+    synchronized FileChannel open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        channels.add(channel);
+        files.put(channel, new OpenFile(path.getFileName().toString()));
+        return channel;
+    }
+
+    // Bytes written so far by file name, in the order the files were opened
+    synchronized Map<String, Long> bytesWritten(){
+        Map<String, Long> bytes = new LinkedHashMap<>();
+        for (FileChannel channel : channels) {
+            OpenFile file = files.get(channel);
+            bytes.merge(file.name, file.bytes, Long::sum);
+        }
+        return bytes;
+    }
+
+    long writeNanos(){
+        return writeNanos;
+    }
+
+    // Empty buffer of at least bufferSize bytes, recycled when possible
+    byte[] takeBuffer(){
+        byte[] buffer = freeBuffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    int bufferSize(){
+        return bufferSize;
+    }
+
+    // Queues the first length bytes of buffer to be appended to channel, ownership of buffer passes to the writer
+    void submit(FileChannel channel, byte[] buffer, int length){
+        checkFailure();
+        try {
+            batches.put(new Batch(channel, buffer, length));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing output", e);
+        }
+    }
+
+    // Writes everything queued so far and closes all files
+    void close() throws IOException {
+        try {
+            batches.put(END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing output", e);
+        }
+
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+
+    private void checkFailure(){
+        if ( failure != null ) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    private void writeBatches(){
+        while ( true ) {
+            Batch batch;
+            try {
+                batch = batches.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if ( batch == END ) {
+                return;
+            }
+
+            // After a failure keep draining so producers never block, but stop writing
+            if ( failure == null ) {
+                try {
+                    long start = System.nanoTime();
+                    ByteBuffer bytes = ByteBuffer.wrap(batch.buffer, 0, batch.length);
+                    while ( bytes.hasRemaining() ) {
+                        batch.channel.write(bytes);
+                    }
+                    writeNanos += System.nanoTime() - start;
+                    files.get(batch.channel).bytes += batch.length;
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+
+            if ( batch.buffer.length == bufferSize ) {
+                freeBuffers.offer(batch.buffer);
+            }
+        }
+    }
+
+    private static class OpenFile {
+        final String name;
+        volatile long bytes = 0;    // only updated by the writer thread
+
+        OpenFile(String name){
+            this.name = name;
+        }
+    }
+
+    private static class Batch {
+        final FileChannel channel;
+        final byte[] buffer;
+        final int length;
+
+        Batch(FileChannel channel, byte[] buffer, int length){
+            this.channel = channel;
+            this.buffer = buffer;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.stream.IntStream;
+
+// Barabási-Albert preferential attachment: node v links to m earlier nodes picked proportionally
+// to their degree. Uses the edge array formulation of Batagelj & Brandes (2005): the second end of
+// edge slot e copies the end at a uniformly picked earlier slot, which picks nodes proportionally to
+// their degree. As in Sanders & Schulz (2016), the earlier slot is drawn from a hash of the slot
+// index, so any slot can be resolved on its own by following copies back to a slot holding its
+// own node, and all nodes are generated in parallel. Self-loops and repeated links produced by the
+// copies are dropped, so the first nodes end up with slightly fewer than m links.
+class BarabasiAlbertGenerator implements NetworkGenerator {
+    private final int N;
+    private final int m;
+
+    BarabasiAlbertGenerator(int N, int m){
+        if ( m < 1 ) {
+            throw new IllegalArgumentException("Barabási-Albert networks need m >= 1, got " + m);
+        }
+        this.N = N;
+        this.m = m;
+    }
+
+    @Override
+    public ContactNetwork generate(long seed){
+        EdgeList[] parts = new EdgeList[NetworkGenerator.blocks(N)];
+        IntStream.range(0, parts.length).parallel().forEach(block -> {
+            EdgeList edges = new EdgeList();
+            int last = (int) Math.min(N, (long) (block + 1) * BLOCK_SIZE);
+            for (int v = block * BLOCK_SIZE; v < last; v++) {
+                for (int i = 0; i < m; i++) {
+                    long slot = 2 * ((long) v * m + i);
+                    edges.add(v + 1, node(seed, slot + 1) + 1);
+                }
+            }
+            parts[block] = edges;
+        });
+        return EdgeList.toSimpleNetwork(N, parts);
+    }
+
+    // Node (0 based) at a slot: even slots hold the node adding the edge, odd ones copy an earlier slot
+    private int node(long seed, long slot){
+        while ( (slot & 1) == 1 ) {
+            slot = (long) (NetworkGenerator.uniform(seed, slot) * slot);
+        }
+        return (int) (slot / (2L * m));
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Compact binary reaction history, a fixed-width alternative to reactionHistory.csv and
+// dynamicStateMinimal.csv. Little endian layout:
+//
+//   header (64 bytes): int magic, int version, int N, int record size, long seed,
+//                      double p, R0, beta, recov_scale, recov_shape
+//   model: int size in bytes, then the compartments and transitions (EpidemicModel.writeStructure)
+//   records (21 bytes): int experiment, double time, byte type, int source, int target
+//
+// Record types are the ReactionType ordinals, plus INITIAL_STATE for the nodes that are not in the
+// initial compartment at the start of an experiment (source = compartment index, target = node).
+// A spontaneous transition has source = target = changing node. The compartment a node moves to
+// follows from the model and its current compartment, so it is not recorded. The records of one
+// experiment are contiguous: its initial state followed by its reactions in time order.
+class BinaryEventLog implements OutputSink {
+    static final int MAGIC = 0x5349524C;    // "SIRL"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 21;
+    static final byte INITIAL_STATE = -1;
+
+    private final AsyncFileWriter writer;
+    private final FileChannel file;
+    private final ReentrantLock fileLock = new ReentrantLock();     // keeps the records of an experiment contiguous
+    private final ThreadLocal<Block> blocks = ThreadLocal.withInitial(Block::new);
+
+    BinaryEventLog(Path path, long randomSeed, Parameters parameters, EpidemicModel model) throws IOException {
+        this.writer = new AsyncFileWriter(1 << 20, 16);
+        this.file = writer.open(path);
+
+        ByteBuffer header = ByteBuffer.wrap(writer.takeBuffer()).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(parameters.N).putInt(RECORD_SIZE).putLong(randomSeed);
+        header.putDouble(parameters.p).putDouble(parameters.R0).putDouble(parameters.beta)
+                .putDouble(parameters.recov_scale).putDouble(parameters.recov_shape);
+
+        int modelSizePosition = header.position();
+        header.putInt(0);
+        model.writeStructure(header);
+        header.putInt(modelSizePosition, header.position() - modelSizePosition - 4);
+        writer.submit(file, header.array(), header.position());
+    }
+
+    // Dense and summarized states can be reconstructed from the log, they are not written
+    @Override
+    public void printNetworkState(int experiment, NetworkState networkState){
+    }
+
+    @Override
+    public void printSummarizedNetworkState(int experiment, NetworkState networkState){
+    }
+
+    // The records of an experiment go to a block of its own, submitted whole in endReactions. An
+    // experiment whose records take more than a buffer holds the file from its first record to its
+    // last and submits its buffers as they fill, so that its block is never in memory at once.
+    // endReactions runs even when the pass fails, so the file is always released.
+    @Override
+    public void startReactions(int experiment, NetworkState initialState, long numberOfReactions){
+        int initialRecords = 0;
+        for (int node = 1; node <= initialState.size(); node++) {
+            if ( initialState.getState(node) != initialState.getModel().initialCompartment ) {
+                initialRecords++;
+            }
+        }
+
+        Block block = blocks.get();
+        block.streaming = RECORD_SIZE * (initialRecords + numberOfReactions) > writer.bufferSize();
+        if ( block.streaming ) {
+            fileLock.lock();
+        }
+        block.records = ByteBuffer.wrap(writer.takeBuffer()).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Initial state
+        for (int node = 1; node <= initialState.size(); node++) {
+            if ( initialState.getState(node) != initialState.getModel().initialCompartment ) {
+                putRecord(block, experiment, initialState.getTime(), INITIAL_STATE,
+                        initialState.getState(node), node);
+            }
+        }
+    }
+
+    @Override
+    public void printReactions(int experiment, ReactionHistory.Chunks reactions){
+        Block block = blocks.get();
+        ByteBuffer records = block.records;
+        for (int reaction = 0; reaction < reactions.size(); reaction++) {
+            if ( records.remaining() < RECORD_SIZE ) {
+                records = nextBuffer(block);
+            }
+            records.putInt(experiment).putDouble(reactions.time(reaction)).put((byte) reactions.type(reaction).ordinal())
+                    .putInt(reactions.source(reaction)).putInt(reactions.node(reaction));
+        }
+    }
+
+    @Override
+    public void endReactions(int experiment){
+        Block block = blocks.get();
+        if ( !block.streaming ) {
+            fileLock.lock();
+        }
+        try {
+            if ( block.records != null ) {
+                writer.submit(file, block.records.array(), block.records.position());
+            }
+        } finally {
+            fileLock.unlock();
+            block.records = null;
+            block.streaming = false;
+        }
+    }
+
+    @Override
+    public Map<String, Long> bytesWritten(){
+        return writer.bytesWritten();
+    }
+
+    @Override
+    public long writeNanos(){
+        return writer.writeNanos();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void putRecord(Block block, int experiment, double time, byte type, int sourceNode, int targetNode){
+        ByteBuffer records = block.records.remaining() < RECORD_SIZE ? nextBuffer(block) : block.records;
+        records.putInt(experiment).putDouble(time).put(type).putInt(sourceNode).putInt(targetNode);
+    }
+
+    // Submits the full buffer of a streaming block and continues in a new one
+    private ByteBuffer nextBuffer(Block block){
+        writer.submit(file, block.records.array(), block.records.position());
+        block.records = ByteBuffer.wrap(writer.takeBuffer()).order(ByteOrder.LITTLE_ENDIAN);
+        return block.records;
+    }
+
+    // Records of the experiment a thread is writing
+    private static class Block {
+        ByteBuffer records;
+        boolean streaming;      // holding fileLock since startReactions
+    }
+}
@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Memory-mapped streaming reader of a BinaryEventLog. Records are read in place from the
+// mapped file, so logs larger than the heap can be replayed. Usage as a converter:
+//
+//   java BinaryEventLogReader <log file> <output path>
+//
+// writes summarizedDynamicState.csv, dynamicStateMinimal.csv and reactionHistory.csv in the
+// same layout as the simulation does (dynamicState.csv only gets the initial states).
+class BinaryEventLogReader implements AutoCloseable {
+    private static final ReactionType[] REACTION_TYPES = ReactionType.values();
+
+    // Records by mapped segment, so that logs above 2 GB can be mapped
+    private static final long RECORDS_PER_SEGMENT = (Integer.MAX_VALUE - 8) / BinaryEventLog.RECORD_SIZE;
+
+    private final FileChannel file;
+    private final MappedByteBuffer[] segments;
+    private final long numberOfRecords;
+    private final long recordsOffset;       // position of the first record, after the header and the model
+
+    final int N;
+    final long randomSeed;
+    final double p, R0, beta, recov_scale, recov_shape;
+    final EpidemicModel model;              // compartments and transition targets only
+
+    // Receives the reconstructed state of an experiment after its initial state and after every reaction
+    interface ReplayObserver {
+        void stateChanged(NetworkState networkState, ReactionType reactionType, int sourceNode, int targetNode);
+    }
+
+    BinaryEventLogReader(Path path) throws IOException {
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+
+        MappedByteBuffer header = file.map(FileChannel.MapMode.READ_ONLY, 0, BinaryEventLog.HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if ( header.getInt() != BinaryEventLog.MAGIC ) {
+            throw new IOException("Not a binary event log: " + path);
+        }
+        int version = header.getInt();
+        if ( version != BinaryEventLog.VERSION ) {
+            throw new IOException("Unsupported event log version " + version + ": " + path);
+        }
+        this.N = header.getInt();
+        if ( header.getInt() != BinaryEventLog.RECORD_SIZE ) {
+            throw new IOException("Unexpected record size: " + path);
+        }
+        this.randomSeed = header.getLong();
+        this.p = header.getDouble();
+        this.R0 = header.getDouble();
+        this.beta = header.getDouble();
+        this.recov_scale = header.getDouble();
+        this.recov_shape = header.getDouble();
+
+        ByteBuffer modelSize = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        file.read(modelSize, BinaryEventLog.HEADER_SIZE);
+        MappedByteBuffer modelSection = file.map(FileChannel.MapMode.READ_ONLY,
+                BinaryEventLog.HEADER_SIZE + 4, modelSize.getInt(0));
+        this.model = EpidemicModel.readStructure(modelSection.order(ByteOrder.LITTLE_ENDIAN));
+        this.recordsOffset = BinaryEventLog.HEADER_SIZE + 4 + modelSize.getInt(0);
+
+        this.numberOfRecords = (file.size() - recordsOffset) / BinaryEventLog.RECORD_SIZE;
+        this.segments = new MappedByteBuffer[(int) ((numberOfRecords + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT)];
+        for (int segment = 0; segment < segments.length; segment++) {
+            long firstRecord = segment * RECORDS_PER_SEGMENT;
+            long records = Math.min(RECORDS_PER_SEGMENT, numberOfRecords - firstRecord);
+            segments[segment] = file.map(FileChannel.MapMode.READ_ONLY,
+                    recordsOffset + firstRecord * BinaryEventLog.RECORD_SIZE,
+                    records * BinaryEventLog.RECORD_SIZE);
+            segments[segment].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    long numberOfRecords(){
+        return numberOfRecords;
+    }
+
+    //------------- Random access to records
+    int experiment(long record){
+        return segment(record).getInt(offset(record));
+    }
+
+    double time(long record){
+        return segment(record).getDouble(offset(record) + 4);
+    }
+
+    byte type(long record){
+        return segment(record).get(offset(record) + 12);
+    }
+
+    int sourceNode(long record){
+        return segment(record).getInt(offset(record) + 13);
+    }
+
+    int targetNode(long record){
+        return segment(record).getInt(offset(record) + 17);
+    }
+
+    // First record of an experiment, or -1 if it is not in the log
+    long firstRecord(int experiment){
+        for (long record = 0; record < numberOfRecords; record = endOfExperiment(record)) {
+            if ( experiment(record) == experiment ) {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    // Record following the contiguous block of the experiment that contains record
+    long endOfExperiment(long record){
+        int experiment = experiment(record);
+        while ( record < numberOfRecords && experiment(record) == experiment ) {
+            record++;
+        }
+        return record;
+    }
+
+    //------------- Reconstruction
+    // Replays the experiment starting at firstRecord up to untilTime, returns the state reached
+    NetworkState replay(long firstRecord, double untilTime, ReplayObserver observer){
+        long endRecord = endOfExperiment(firstRecord);
+
+        // Initial state
+        long record = firstRecord;
+        NetworkState networkState = new NetworkState(time(firstRecord), N, model);
+        while ( record < endRecord && type(record) == BinaryEventLog.INITIAL_STATE ) {
+            networkState.setState(targetNode(record), sourceNode(record));
+            record++;
+        }
+        if ( observer != null ) {
+            observer.stateChanged(networkState, null, 0, 0);
+        }
+
+        // Reactions
+        for ( ; record < endRecord && time(record) <= untilTime; record++ ) {
+            ReactionType reactionType = REACTION_TYPES[type(record)];
+            int compartment = networkState.getState(targetNode(record));
+            networkState.setTime(time(record));
+            if ( reactionType == ReactionType.Infection ) {
+                networkState.setState(targetNode(record), model.contactTarget[compartment]);
+            } else if ( reactionType == ReactionType.Recovery ) {
+                networkState.setState(targetNode(record), model.spontaneousTarget[compartment]);
+            }
+            if ( observer != null ) {
+                observer.stateChanged(networkState, reactionType, sourceNode(record), targetNode(record));
+            }
+        }
+        return networkState;
+    }
+
+    // State of an experiment at time t
+    NetworkState stateAt(int experiment, double t){
+        long record = firstRecord(experiment);
+        if ( record < 0 ) {
+            throw new IllegalArgumentException("Experiment " + experiment + " is not in the log");
+        }
+        return replay(record, t, null);
+    }
+
+    // Prevalence curve of an experiment: rows of t followed by the number of nodes in every compartment
+    double[][] prevalence(int experiment){
+        long record = firstRecord(experiment);
+        if ( record < 0 ) {
+            throw new IllegalArgumentException("Experiment " + experiment + " is not in the log");
+        }
+
+        double[][] curve = new double[(int) (endOfExperiment(record) - record) + 1][];
+        int[] row = {0};
+        replay(record, Double.POSITIVE_INFINITY, (networkState, reactionType, sourceNode, targetNode) -> {
+            double[] point = new double[1 + model.numberOfCompartments()];
+            point[0] = networkState.getTime();
+            for (int compartment = 0; compartment < model.numberOfCompartments(); compartment++) {
+                point[1 + compartment] = networkState.getCount(compartment);
+            }
+            curve[row[0]++] = point;
+        });
+        return Arrays.copyOf(curve, row[0]);
+    }
+
+    // Replays every experiment of the log into a sink, in the order they were written
+    void convert(OutputSink output){
+        ReactionHistory reactionHistory = new ReactionHistory(1024);
+        for (long record = 0; record < numberOfRecords; record = endOfExperiment(record)) {
+            int experiment = experiment(record);
+            reactionHistory.clear();
+
+            NetworkState[] initialState = new NetworkState[1];
+            replay(record, Double.POSITIVE_INFINITY, (networkState, reactionType, sourceNode, targetNode) -> {
+                if ( reactionType == null ) {
+                    initialState[0] = networkState.snapshot();
+                    output.printNetworkState(experiment, networkState);
+                } else {
+                    reactionHistory.add(networkState.getTime(), reactionType, sourceNode, targetNode,
+                            networkState.getState(targetNode));
+                    output.printStateChange(experiment, networkState, targetNode);
+                }
+                output.printSummarizedNetworkState(experiment, networkState);
+            });
+
+            output.printReactions(experiment, initialState[0], reactionHistory);
+            output.endExperiment(experiment);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private MappedByteBuffer segment(long record){
+        return segments[(int) (record / RECORDS_PER_SEGMENT)];
+    }
+
+    private int offset(long record){
+        return (int) (record % RECORDS_PER_SEGMENT) * BinaryEventLog.RECORD_SIZE;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if ( args.length != 2 ) {
+            System.err.println("Usage: BinaryEventLogReader <log file> <output path>");
+            System.exit(1);
+        }
+
+        try (BinaryEventLogReader reader = new BinaryEventLogReader(Paths.get(args[0]));
+             OutputSink output = new PrintOutput(args[1], reader.N, reader.model)) {
+            reader.convert(output);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// Encodes text records straight into a byte buffer, without intermediate Strings, and hands
+// the buffer over to an AsyncFileWriter once it fills up. Not thread safe: one encoder per
+// producing thread and file. Records are only handed over whole, at endRecord.
+class ByteEncoder {
+    private static final long[] POWERS_OF_TEN = new long[19];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = 10 * POWERS_OF_TEN[i - 1];
+        }
+    }
+    private static final int SIGNIFICANT_DIGITS = 15;
+    private static final byte[] INFINITY = "Infinity".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NAN = "NaN".getBytes(StandardCharsets.US_ASCII);
+
+    private final AsyncFileWriter writer;
+    private final FileChannel channel;
+    private byte[] buffer;
+    private int position = 0;
+
+    ByteEncoder(AsyncFileWriter writer, FileChannel channel){
+        this.writer = writer;
+        this.channel = channel;
+        this.buffer = writer.takeBuffer();
+    }
+
+    static byte[] ascii(String text){
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    ByteEncoder append(byte[] text){
+        ensureCapacity(text.length);
+        System.arraycopy(text, 0, buffer, position, text.length);
+        position += text.length;
+        return this;
+    }
+
+    ByteEncoder append(char c){
+        ensureCapacity(1);
+        buffer[position++] = (byte) c;
+        return this;
+    }
+
+    ByteEncoder append(long value){
+        ensureCapacity(20);
+        if ( value < 0 ) {
+            if ( value == Long.MIN_VALUE ) {
+                return append(ascii(String.valueOf(value)));
+            }
+            buffer[position++] = '-';
+            value = -value;
+        }
+        appendDigits(value, numberOfDigits(value));
+        return this;
+    }
+
+    // Decimal notation with up to 15 significant digits and at least one fractional digit
+    // ("0.0651257227996237", "3.0"), scientific notation outside [1e-3, 1e7) as Double.toString does
+    ByteEncoder append(double value){
+        ensureCapacity(32);
+        if ( Double.isNaN(value) ) {
+            return append(NAN);
+        }
+        if ( value < 0 || (value == 0 && 1 / value < 0) ) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        if ( Double.isInfinite(value) ) {
+            return append(INFINITY);
+        }
+        if ( value == 0 ) {
+            return append('0').append('.').append('0');
+        }
+
+        // value ~ digits * 10^(exponent - 14), digits having exactly 15 digits
+        int exponent = (int) Math.floor(Math.log10(value));
+        if ( exponent < -290 || exponent > 290 ) {
+            // Near the ends of the range 10^(14 - exponent) overflows or subnormals lose digits, and rounding
+            // to 15 digits can overflow, so they are left to Double.toString
+            return append(ascii(Double.toString(value)));
+        }
+        long digits = Math.round(scale(value, SIGNIFICANT_DIGITS - 1 - exponent));
+        if ( digits >= POWERS_OF_TEN[SIGNIFICANT_DIGITS] ) {
+            exponent++;
+            digits = Math.round(scale(value, SIGNIFICANT_DIGITS - 1 - exponent));
+        } else if ( digits < POWERS_OF_TEN[SIGNIFICANT_DIGITS - 1] ) {
+            exponent--;
+            digits = Math.round(scale(value, SIGNIFICANT_DIGITS - 1 - exponent));
+        }
+
+        // Trailing zeros are not printed
+        int numberOfDigits = SIGNIFICANT_DIGITS;
+        while ( numberOfDigits > 1 && digits % 10 == 0 ) {
+            digits /= 10;
+            numberOfDigits--;
+        }
+
+        if ( exponent >= -3 && exponent < 7 ) {
+            if ( exponent < 0 ) {
+                buffer[position++] = '0';
+                buffer[position++] = '.';
+                for (int i = -1; i > exponent; i--) {
+                    buffer[position++] = '0';
+                }
+                appendDigits(digits, numberOfDigits);
+            } else if ( numberOfDigits <= exponent + 1 ) {
+                appendDigits(digits, numberOfDigits);
+                for (int i = numberOfDigits; i <= exponent; i++) {
+                    buffer[position++] = '0';
+                }
+                buffer[position++] = '.';
+                buffer[position++] = '0';
+            } else {
+                long integerPart = digits / POWERS_OF_TEN[numberOfDigits - exponent - 1];
+                appendDigits(integerPart, exponent + 1);
+                buffer[position++] = '.';
+                appendDigits(digits % POWERS_OF_TEN[numberOfDigits - exponent - 1], numberOfDigits - exponent - 1);
+            }
+        } else {
+            buffer[position++] = (byte) ('0' + digits / POWERS_OF_TEN[numberOfDigits - 1]);
+            buffer[position++] = '.';
+            if ( numberOfDigits > 1 ) {
+                appendDigits(digits % POWERS_OF_TEN[numberOfDigits - 1], numberOfDigits - 1);
+            } else {
+                buffer[position++] = '0';
+            }
+            buffer[position++] = 'E';
+            append((long) exponent);
+        }
+        return this;
+    }
+
+    // Marks the end of a record, the buffer is handed to the writer once it is full enough
+    void endRecord(){
+        if ( position >= writer.bufferSize() / 2 ) {
+            flush();
+        }
+    }
+
+    // Hands over whatever has been encoded so far
+    void flush(){
+        if ( position > 0 ) {
+            writer.submit(channel, buffer, position);
+            buffer = writer.takeBuffer();
+            position = 0;
+        }
+    }
+
+    private void ensureCapacity(int bytes){
+        if ( position + bytes > buffer.length ) {
+            byte[] larger = new byte[Math.max(2 * buffer.length, position + bytes)];
+            System.arraycopy(buffer, 0, larger, 0, position);
+            buffer = larger;
+        }
+    }
+
+    private void appendDigits(long value, int numberOfDigits){
+        for (int i = position + numberOfDigits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += numberOfDigits;
+    }
+
+    private static int numberOfDigits(long value){
+        int digits = 1;
+        while ( digits < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[digits] ) {
+            digits++;
+        }
+        return digits;
+    }
+
+    private static double scale(double value, int powerOfTen){
+        if ( powerOfTen >= 0 ) {
+            return powerOfTen < POWERS_OF_TEN.length ? value * POWERS_OF_TEN[powerOfTen] : value * Math.pow(10, powerOfTen);
+        } else {
+            return -powerOfTen < POWERS_OF_TEN.length ? value / POWERS_OF_TEN[-powerOfTen] : value / Math.pow(10, -powerOfTen);
+        }
+    }
+}
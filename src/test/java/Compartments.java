@@ -1,7 +0,0 @@
-public enum Compartments {
-    S,
-
-    I,
-
-    R
-}
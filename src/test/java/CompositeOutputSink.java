@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Forwards every record to several sinks, e.g. CSV files and a binary event log at once
+class CompositeOutputSink implements OutputSink {
+    private final OutputSink[] sinks;
+
+    CompositeOutputSink(OutputSink... sinks){
+        this.sinks = sinks;
+    }
+
+    @Override
+    public void printNetworkState(int experiment, NetworkState networkState){
+        for (OutputSink sink : sinks) {
+            sink.printNetworkState(experiment, networkState);
+        }
+    }
+
+    @Override
+    public void printStateChange(int experiment, NetworkState networkState, int node){
+        for (OutputSink sink : sinks) {
+            sink.printStateChange(experiment, networkState, node);
+        }
+    }
+
+    @Override
+    public void printSummarizedNetworkState(int experiment, NetworkState networkState){
+        for (OutputSink sink : sinks) {
+            sink.printSummarizedNetworkState(experiment, networkState);
+        }
+    }
+
+    @Override
+    public void startReactions(int experiment, NetworkState initialState, long numberOfReactions){
+        for (OutputSink sink : sinks) {
+            sink.startReactions(experiment, initialState, numberOfReactions);
+        }
+    }
+
+    @Override
+    public void printReactions(int experiment, ReactionHistory.Chunks reactions){
+        for (OutputSink sink : sinks) {
+            sink.printReactions(experiment, reactions);
+        }
+    }
+
+    // Ends the pass of every sink, even if ending it fails for one of them
+    @Override
+    public void endReactions(int experiment){
+        RuntimeException failure = null;
+        for (OutputSink sink : sinks) {
+            try {
+                sink.endReactions(experiment);
+            } catch (RuntimeException e) {
+                if ( failure == null ) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void printStoppingRule(int experiment, NetworkState finalState, long numberOfEvents, String stoppedBy){
+        for (OutputSink sink : sinks) {
+            sink.printStoppingRule(experiment, finalState, numberOfEvents, stoppedBy);
+        }
+    }
+
+    @Override
+    public void endExperiment(int experiment){
+        for (OutputSink sink : sinks) {
+            sink.endExperiment(experiment);
+        }
+    }
+
+    @Override
+    public Map<String, Long> bytesWritten(){
+        Map<String, Long> bytes = new LinkedHashMap<>();
+        for (OutputSink sink : sinks) {
+            sink.bytesWritten().forEach((file, written) -> bytes.merge(file, written, Long::sum));
+        }
+        return bytes;
+    }
+
+    @Override
+    public long writeNanos(){
+        long nanos = 0;
+        for (OutputSink sink : sinks) {
+            nanos += sink.writeNanos();
+        }
+        return nanos;
+    }
+
+    // Closes every sink, even if closing one of them fails
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (OutputSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if ( failure == null ) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+}
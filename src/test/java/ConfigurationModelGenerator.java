@@ -0,0 +1,80 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Erased configuration model: every node gets as many link stubs as its degree and stubs are
+// matched uniformly at random, dropping self-loops and repeated links. The random matching is a
+// parallel sort of the stubs on hashed keys, so it runs on all cores and only depends on the seed.
+class ConfigurationModelGenerator implements NetworkGenerator {
+    private final int N;
+    private final double exponent;
+    private final int minDegree;
+    private final int[] degrees;        // given degree sequence, by node id, null for a power law
+
+    // Degrees drawn from a power law P(d) ~ d^-exponent for d >= minDegree, below N
+    ConfigurationModelGenerator(int N, double exponent, int minDegree){
+        if ( exponent <= 1 || minDegree < 1 ) {
+            throw new IllegalArgumentException("Power-law degrees need exponent > 1 and minDegree >= 1");
+        }
+        this.N = N;
+        this.exponent = exponent;
+        this.minDegree = minDegree;
+        this.degrees = null;
+    }
+
+    // Arbitrary degree sequence, degrees[node] for nodes 1..N (index 0 unused)
+    ConfigurationModelGenerator(int[] degrees){
+        this.N = degrees.length - 1;
+        this.exponent = Double.NaN;
+        this.minDegree = 0;
+        this.degrees = degrees;
+    }
+
+    @Override
+    public ContactNetwork generate(long seed){
+        int[] sequence = degrees != null ? degrees : powerLawDegrees(seed);
+
+        // Stub positions by node
+        long[] firstStub = new long[N + 2];
+        for (int node = 1; node <= N; node++) {
+            firstStub[node + 1] = firstStub[node] + sequence[node];
+        }
+        long numberOfStubs = firstStub[N + 1];
+        if ( numberOfStubs > Integer.MAX_VALUE - 8 ) {
+            throw new IllegalArgumentException("Too many stubs: " + numberOfStubs);
+        }
+
+        // Stubs sorted on a random key (high bits) holding their node (low bits): a random permutation
+        long matchingSeed = NetworkGenerator.hash(seed, -1);
+        long[] stubs = new long[(int) numberOfStubs];
+        IntStream.rangeClosed(1, N).parallel().forEach(node -> {
+            for (long stub = firstStub[node]; stub < firstStub[node + 1]; stub++) {
+                stubs[(int) stub] = (NetworkGenerator.hash(matchingSeed, stub) & 0xFFFFFFFF00000000L) | node;
+            }
+        });
+        Arrays.parallelSort(stubs);
+
+        // Consecutive stubs are linked, an odd stub left over is dropped
+        int numberOfLinks = stubs.length / 2;
+        EdgeList[] parts = new EdgeList[NetworkGenerator.blocks(numberOfLinks)];
+        IntStream.range(0, parts.length).parallel().forEach(block -> {
+            EdgeList edges = new EdgeList();
+            int last = (int) Math.min(numberOfLinks, (long) (block + 1) * BLOCK_SIZE);
+            for (int link = block * BLOCK_SIZE; link < last; link++) {
+                edges.add((int) stubs[2 * link], (int) stubs[2 * link + 1]);
+            }
+            parts[block] = edges;
+        });
+        return EdgeList.toSimpleNetwork(N, parts);
+    }
+
+    // Discrete power law by inversion of the continuous one, one hashed uniform per node
+    private int[] powerLawDegrees(long seed){
+        int[] sequence = new int[N + 1];
+        IntStream.rangeClosed(1, N).parallel().forEach(node -> {
+            double u = NetworkGenerator.uniform(seed, node);
+            double degree = minDegree * Math.pow(1 - u, -1 / (exponent - 1));
+            sequence[node] = (int) Math.min(N - 1, Math.floor(degree));
+        });
+        return sequence;
+    }
+}
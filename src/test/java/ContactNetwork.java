@@ -0,0 +1,62 @@
+// Immutable undirected contact network in compressed sparse row form.
+// Neighbors of node n (nodes are 1..N) are targets[offsets[n]] .. targets[offsets[n + 1] - 1],
+// every edge is stored once from each of its two end nodes.
+class ContactNetwork {
+    private final int[] offsets;
+    private final int[] targets;
+    private final int maxDegree;
+
+    ContactNetwork(int[] offsets, int[] targets){
+        this.offsets = offsets;
+        this.targets = targets;
+
+        int max = 0;
+        for (int node = 1; node < offsets.length - 1; node++){
+            max = Math.max(max, offsets[node + 1] - offsets[node]);
+        }
+        this.maxDegree = max;
+    }
+
+    // Underlying arrays, for binary caches only: they must not be modified
+    int[] offsets(){
+        return offsets;
+    }
+
+    int[] targets(){
+        return targets;
+    }
+
+    // Number of nodes
+    int size(){
+        return offsets.length - 2;
+    }
+
+    long numberOfEdges(){
+        return targets.length / 2;
+    }
+
+    double meanDegree(){
+        return (double) targets.length / size();
+    }
+
+    int degree(int node){
+        return offsets[node + 1] - offsets[node];
+    }
+
+    int maxDegree(){
+        return maxDegree;
+    }
+
+    //------------- Neighbor iteration: for (int k = neighborsStart(n); k < neighborsEnd(n); k++) neighbor(k)
+    int neighborsStart(int node){
+        return offsets[node];
+    }
+
+    int neighborsEnd(int node){
+        return offsets[node + 1];
+    }
+
+    int neighbor(int index){
+        return targets[index];
+    }
+}
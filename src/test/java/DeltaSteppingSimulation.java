@@ -0,0 +1,427 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+// Experimental parallel engine for single large outbreaks, in models where nodes are infected at most
+// once (SIR, SEIR). Its results are exact, but it has not been shown to be faster than Simulation:
+// on one thread it runs at 0.7-0.95x its speed (0.76x at N=1e6, p=5e-6), and scaling with threads is
+// unmeasured. Check with EngineComparison on a multi-core machine before relying on it for speed.
+//
+// Without reinfection an experiment is a shortest path problem: a node is infected at the earliest time
+// t_i + delay_ij over its neighbors i, t_i being the infection time of i, delay_ij the contact delay
+// of the link, counted from when i becomes infectious, and only contacts before i leaves its
+// infectious compartment counting, which is how Simulation draws them. Delays are drawn by directed
+// link and periods by node from counter-based SplitMix64 hashes of the experiment's seeds, so every
+// draw is the same whenever and on whichever thread it is made: results are exact, and identical for
+// any number of threads.
+//
+// Infection times are settled with Meyer & Sanders' delta-stepping (2003): tentative times are kept
+// in buckets of window time units, and the earliest non-empty bucket is settled by relaxing the
+// links of its nodes in parallel, with an atomic minimum on the times, until no time in the window
+// improves. Its infections then join the spontaneous transitions in an EventQueue and are returned one
+// by one in time order, so outputs and stopping rules see the events as with the other engines. Wider
+// windows give more nodes to each parallel step but relax more links twice, the default one is a
+// quarter of the mean delay between two contacts of a node.
+class DeltaSteppingSimulation extends SimulationEngine {
+    private static final VarHandle INFECTION_TIMES = MethodHandles.arrayElementVarHandle(double[].class);
+    private static final int CHUNK_SIZE = 256;          // nodes relaxed by one parallel task
+    private static final double WINDOW_SCALE = 0.25;    // default window, in mean delays between contacts
+
+    private final EpidemicModel model;
+    private final int infectedCompartment;      // the one susceptible nodes move to when contacted
+    private final int maxSteps;                 // bound on the spontaneous transitions of a node
+    private final double windowParameter;
+    private long contactSeed;
+    private long periodSeed;
+
+    private ContactNetwork network;
+    private double startTime;
+    private double window;
+    private long currentBucket;
+    private double settledUntil;        // infections before this time are all in reactionsToCome
+
+    private final EventQueue reactionsToCome;   // settled infections and spontaneous transitions
+    private final double[] infectionTimes;      // tentative, then settled, by node, +Infinity if none
+    private final int[] sources;
+    private final boolean[] settled;
+    private final byte[] steps;                 // spontaneous transitions made since the infection or start
+    private final boolean[] touched;            // nodes with an infection time, reset by the next set up
+    private int[] touchedNodes = new int[16];
+    private int numberTouched = 0;
+
+    private final TreeMap<Long, Candidates> buckets = new TreeMap<>();
+    private final ArrayDeque<Candidates> freeCandidates = new ArrayDeque<>();
+    private Relaxation[] relaxations = new Relaxation[0];
+    private final SplitMix64 stream = new SplitMix64(0);    // draws of the stepping thread
+    private int[] phaseNodes = new int[16];
+    private int[] windowNodes = new int[16];
+    private int numberWindowNodes;
+
+    DeltaSteppingSimulation(NetworkState initialState, Parameters parameters){
+        super(initialState);
+        this.model = initialState.getModel();
+        this.maxSteps = model.numberOfCompartments();
+        this.windowParameter = parameters.parallelWindow;
+        this.infectedCompartment = model.contactTarget[model.initialCompartment];
+        checkModel();
+
+        int N = parameters.N;
+        this.reactionsToCome = new EventQueue(N);
+        this.infectionTimes = new double[N + 1];
+        Arrays.fill(infectionTimes, Double.POSITIVE_INFINITY);
+        this.sources = new int[N + 1];
+        this.settled = new boolean[N + 1];
+        this.steps = new byte[N + 1];
+        this.touched = new boolean[N + 1];
+    }
+
+    // Only the initial compartment is infected by contacts, and no node ever goes back to it
+    private void checkModel(){
+        boolean reinfection = infectedCompartment < 0 || model.spontaneousTarget[model.initialCompartment] >= 0;
+        for (int compartment = 0; compartment < maxSteps; compartment++) {
+            reinfection |= compartment != model.initialCompartment && model.contactTarget[compartment] >= 0;
+            int next = model.spontaneousTarget[compartment];
+            for (int step = 0; next >= 0; step++) {
+                reinfection |= next == model.initialCompartment || step >= maxSteps;
+                next = step >= maxSteps ? -1 : model.spontaneousTarget[next];
+            }
+        }
+        if ( reinfection ) {
+            throw new IllegalArgumentException("DeltaStepping needs a model where nodes are infected at most once (SIR, SEIR)");
+        }
+    }
+
+    @Override
+    void seedRNG(RandomStream random){
+        this.contactSeed = random.nextLong();
+        this.periodSeed = random.nextLong();
+    }
+
+    @Override
+    void simulationSetUp(NetworkState initialState, ContactNetwork network, Parameters parameters){
+        reactionsToCome.clear();
+        for (Candidates bucket : buckets.values()) {
+            bucket.clear();
+            freeCandidates.add(bucket);
+        }
+        buckets.clear();
+        while ( numberTouched > 0 ) {
+            int node = touchedNodes[--numberTouched];
+            infectionTimes[node] = Double.POSITIVE_INFINITY;
+            settled[node] = false;
+            steps[node] = 0;
+            touched[node] = false;
+        }
+
+        this.network = network;
+        this.startTime = initialState.getTime();
+        double maxRate = 0;
+        for (int compartment = 0; compartment < maxSteps; compartment++) {
+            maxRate = Math.max(maxRate, model.contactRate[model.initialCompartment][compartment]);
+        }
+        this.window = windowParameter > 0 ? windowParameter : WINDOW_SCALE / (maxRate * network.meanDegree());
+        this.currentBucket = -1;
+        this.settledUntil = startTime;
+
+        // Active nodes start settled, their contacts go to the buckets
+        ensureCapacity(numberOfActiveNodes);
+        for (int i = 0; i < numberOfActiveNodes; i++) {
+            int node = activeNodes[i];
+            touch(node);
+            infectionTimes[node] = startTime;
+            settled[node] = true;
+            scheduleSpontaneousTransition(node, initialState.getState(node), startTime);
+            phaseNodes[i] = node;
+        }
+        mergeImprovements(relaxAll(numberOfActiveNodes), startTime, null);
+    }
+
+    private void touch(int node){
+        if ( !touched[node] ) {
+            touched[node] = true;
+            if ( numberTouched == touchedNodes.length ) {
+                touchedNodes = Arrays.copyOf(touchedNodes, 2 * numberTouched);
+            }
+            touchedNodes[numberTouched++] = node;
+        }
+    }
+
+    //------------- Draws, the same for a node, link and step whenever they are made
+    // Time a node spends in the compartment it entered with its step-th spontaneous transition
+    private double period(int node, int step, int compartment, SplitMix64 stream){
+        stream.setSeed(SplitMix64.hash(periodSeed, (long) node * maxSteps + step));
+        return model.spontaneousPeriod[compartment].sample(stream);
+    }
+
+    // Delay from the start of a step to the contact of link k
+    private double contactDelay(int k, int step, double rate, SplitMix64 stream){
+        stream.setSeed(SplitMix64.hash(contactSeed, (long) k * maxSteps + step));
+        return stream.nextExponential() / rate;
+    }
+
+    private void scheduleSpontaneousTransition(int node, int compartment, double currentTime){
+        if ( model.spontaneousTarget[compartment] >= 0 ) {
+            reactionsToCome.scheduleRecovery(node, currentTime + period(node, steps[node], compartment, stream));
+        }
+    }
+
+    //------------- Delta-stepping
+    // Relaxes the links of phaseNodes[0 .. count - 1] in chunks of CHUNK_SIZE nodes, returns the number of chunks
+    private int relaxAll(int count){
+        int numberOfChunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if ( relaxations.length < numberOfChunks ) {
+            int length = relaxations.length;
+            relaxations = Arrays.copyOf(relaxations, Math.max(numberOfChunks, 2 * length));
+            for (int chunk = length; chunk < relaxations.length; chunk++) {
+                relaxations[chunk] = new Relaxation();
+            }
+        }
+        if ( numberOfChunks == 1 ) {
+            relaxChunk(0, count);
+        } else if ( numberOfChunks > 1 ) {
+            IntStream.range(0, numberOfChunks).parallel().forEach(chunk -> relaxChunk(chunk, count));
+        }
+        return numberOfChunks;
+    }
+
+    private void relaxChunk(int chunk, int count){
+        Relaxation relaxation = relaxations[chunk];
+        int end = Math.min(count, (chunk + 1) * CHUNK_SIZE);
+        for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+            relax(phaseNodes[i], relaxation);
+        }
+    }
+
+    // Contacts of a node along its compartments, from its infection time (or the start for the nodes
+    // not in the initial compartment then), lowering the times of the neighbors they would infect
+    private void relax(int node, Relaxation relaxation){
+        int initial = model.initialCompartment;
+        int compartment = initialState.getState(node) == initial ? infectedCompartment : initialState.getState(node);
+        double start = (double) INFECTION_TIMES.getVolatile(infectionTimes, node);
+
+        for (int step = 0; compartment >= 0 && step < maxSteps; step++) {
+            boolean leaves = model.spontaneousTarget[compartment] >= 0;
+            double end = leaves ? start + period(node, step, compartment, relaxation.stream) : Double.POSITIVE_INFINITY;
+            double rate = model.contactRate[initial][compartment];
+            if ( rate > 0 ) {
+                for (int k = network.neighborsStart(node); k < network.neighborsEnd(node); k++) {
+                    int neighbor = network.neighbor(k);
+
+                    // Neighbors infected before this step starts cannot be infected earlier by it
+                    if ( initialState.getState(neighbor) != initial || infectionTimes[neighbor] <= start ) {
+                        continue;
+                    }
+                    double time = start + contactDelay(k, step, rate, relaxation.stream);
+                    if ( time < end ) {
+                        lowerInfectionTime(neighbor, time, node, relaxation.improved);
+                    }
+                }
+            }
+            if ( !leaves ) {
+                break;
+            }
+            start = end;
+            compartment = model.spontaneousTarget[compartment];
+        }
+    }
+
+    private void lowerInfectionTime(int node, double time, int source, Candidates improved){
+        double current = (double) INFECTION_TIMES.getVolatile(infectionTimes, node);
+        while ( time < current ) {
+            if ( INFECTION_TIMES.compareAndSet(infectionTimes, node, current, time) ) {
+                improved.add(node, time, source);
+                return;
+            }
+            current = (double) INFECTION_TIMES.getVolatile(infectionTimes, node);
+        }
+    }
+
+    // Moves the times lowered by the last relaxation that still hold to nextPhase when they fall
+    // before windowEnd, to their buckets otherwise
+    private void mergeImprovements(int numberOfChunks, double windowEnd, Candidates nextPhase){
+        long lastBucket = Long.MIN_VALUE;
+        Candidates bucketCandidates = null;
+        for (int chunk = 0; chunk < numberOfChunks; chunk++) {
+            Candidates improved = relaxations[chunk].improved;
+            for (int i = 0; i < improved.size; i++) {
+                int node = improved.nodes[i];
+                double time = improved.times[i];
+                if ( time != infectionTimes[node] ) {
+                    continue;
+                }
+                touch(node);
+                if ( time < windowEnd ) {
+                    nextPhase.add(node, time, improved.sources[i]);
+                } else {
+                    long bucket = Math.max(currentBucket + 1, bucketOf(time));
+                    if ( bucket != lastBucket ) {
+                        lastBucket = bucket;
+                        bucketCandidates = buckets.get(bucket);
+                        if ( bucketCandidates == null ) {
+                            bucketCandidates = newCandidates();
+                            buckets.put(bucket, bucketCandidates);
+                        }
+                    }
+                    bucketCandidates.add(node, time, improved.sources[i]);
+                }
+            }
+            improved.clear();
+        }
+    }
+
+    // Bucket whose window [startTime + bucket * window, startTime + (bucket + 1) * window) holds a time,
+    // the rounding of the division being corrected against the bounds settleNextWindow uses
+    private long bucketOf(double time){
+        long bucket = (long) ((time - startTime) / window);
+        if ( time >= startTime + (bucket + 1) * window ) {
+            bucket++;
+        } else if ( bucket > 0 && time < startTime + bucket * window ) {
+            bucket--;
+        }
+        return bucket;
+    }
+
+    // Settles the infections of the earliest bucket holding some, false when there are none left
+    private boolean settleNextWindow(){
+        while ( !buckets.isEmpty() ) {
+            Map.Entry<Long, Candidates> first = buckets.pollFirstEntry();
+            currentBucket = first.getKey();
+            double windowEnd = startTime + (currentBucket + 1) * window;
+            Candidates phase = first.getValue();
+            Candidates nextPhase = newCandidates();
+            numberWindowNodes = 0;
+
+            // Phases until no time of the window is lowered
+            while ( phase.size > 0 ) {
+                ensureCapacity(phase.size);
+                int count = 0;
+                for (int i = 0; i < phase.size; i++) {
+                    int node = phase.nodes[i];
+                    if ( phase.times[i] == infectionTimes[node] && !settled[node] ) {
+                        sources[node] = phase.sources[i];
+                        phaseNodes[count++] = node;
+                    }
+                }
+                if ( numberWindowNodes + count > windowNodes.length ) {
+                    windowNodes = Arrays.copyOf(windowNodes, Math.max(2 * windowNodes.length, numberWindowNodes + count));
+                }
+                System.arraycopy(phaseNodes, 0, windowNodes, numberWindowNodes, count);
+                numberWindowNodes += count;
+
+                mergeImprovements(relaxAll(count), windowEnd, nextPhase);
+                phase.clear();
+                Candidates swap = phase;
+                phase = nextPhase;
+                nextPhase = swap;
+            }
+            freeCandidates.add(phase);
+            freeCandidates.add(nextPhase);
+            settledUntil = Math.max(settledUntil, windowEnd);
+
+            // Nodes relaxed more than once are settled at their last time
+            boolean infections = false;
+            for (int i = 0; i < numberWindowNodes; i++) {
+                int node = windowNodes[i];
+                if ( !settled[node] ) {
+                    settled[node] = true;
+                    reactionsToCome.scheduleInfection(sources[node], node, infectionTimes[node]);
+                    infections = true;
+                }
+            }
+            if ( infections ) {
+                return true;
+            }
+        }
+        settledUntil = Double.POSITIVE_INFINITY;
+        return false;
+    }
+
+    private void ensureCapacity(int count){
+        if ( phaseNodes.length < count ) {
+            phaseNodes = new int[Math.max(count, 2 * phaseNodes.length)];
+        }
+    }
+
+    private Candidates newCandidates(){
+        Candidates candidates = freeCandidates.poll();
+        return candidates != null ? candidates : new Candidates();
+    }
+
+    //------------- Events, in time order
+    // Events are returned once every infection before them is settled
+    @Override
+    boolean hasReactionsToCome(){
+        while ( reactionsToCome.nextTime() >= settledUntil && settleNextWindow() ) {
+            // settling windows up to the next event
+        }
+        return !reactionsToCome.isEmpty();
+    }
+
+    @Override
+    int queueSize(){
+        return reactionsToCome.size();
+    }
+
+    @Override
+    int reactionStep(NetworkState networkState,
+                     ReactionHistory reactionHistory,
+                     ContactNetwork network, Parameters parameters){
+
+        double reactionTime = reactionsToCome.nextTime();
+        int node = reactionsToCome.nextNode();
+        networkState.setTime(reactionTime);
+
+        if ( reactionsToCome.nextType() == ReactionType.Infection ) {
+            int sourceNode = reactionsToCome.nextSource();
+            reactionsToCome.removeNext();
+
+            networkState.setState(node, infectedCompartment);
+            scheduleSpontaneousTransition(node, infectedCompartment, reactionTime);
+            reactionHistory.add(reactionTime, ReactionType.Infection, sourceNode, node, infectedCompartment);
+
+        } else {
+            reactionsToCome.removeNext();
+
+            int newCompartment = model.spontaneousTarget[networkState.getState(node)];
+            networkState.setState(node, newCompartment);
+            steps[node]++;
+            scheduleSpontaneousTransition(node, newCompartment, reactionTime);
+            reactionHistory.add(reactionTime, ReactionType.Recovery, node, node, newCompartment);
+        }
+        return node;
+    }
+
+    // Growable (node, time, source) columns
+    private static final class Candidates {
+        int[] nodes = new int[16];
+        double[] times = new double[16];
+        int[] sources = new int[16];
+        int size = 0;
+
+        void add(int node, double time, int source){
+            if ( size == nodes.length ) {
+                nodes = Arrays.copyOf(nodes, 2 * size);
+                times = Arrays.copyOf(times, 2 * size);
+                sources = Arrays.copyOf(sources, 2 * size);
+            }
+            nodes[size] = node;
+            times[size] = time;
+            sources[size] = source;
+            size++;
+        }
+
+        void clear(){
+            size = 0;
+        }
+    }
+
+    // Draws and lowered times of one parallel task
+    private static final class Relaxation {
+        final SplitMix64 stream = new SplitMix64(0);
+        final Candidates improved = new Candidates();
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Growable list of undirected edges held in primitive arrays, used while a network is being built.
+// Degrees are kept up to date as edges are added so generators can inspect them before the
+// network is frozen into its compressed sparse row form. Parallel generators fill one list per
+// block of work, without degrees, and merge them with toSimpleNetwork.
+class EdgeList {
+    private final int N;
+    private final int[] degrees;        // degree by node id, nodes are 1..N, null when not tracked
+    private int[] nodes1 = new int[16];
+    private int[] nodes2 = new int[16];
+    private int numberOfEdges = 0;
+
+    EdgeList(int N){
+        this.N = N;
+        this.degrees = new int[N + 1];
+    }
+
+    // Edges only, for one block of a parallel generator
+    EdgeList(){
+        this.N = 0;
+        this.degrees = null;
+    }
+
+    // Edges already held in arrays, the first numberOfEdges of them
+    EdgeList(int[] nodes1, int[] nodes2, int numberOfEdges){
+        this.N = 0;
+        this.degrees = null;
+        this.nodes1 = nodes1;
+        this.nodes2 = nodes2;
+        this.numberOfEdges = numberOfEdges;
+    }
+
+    void add(int node1, int node2){
+        if ( numberOfEdges == nodes1.length ) {
+            nodes1 = Arrays.copyOf(nodes1, 2 * numberOfEdges);
+            nodes2 = Arrays.copyOf(nodes2, 2 * numberOfEdges);
+        }
+        nodes1[numberOfEdges] = node1;
+        nodes2[numberOfEdges] = node2;
+        numberOfEdges++;
+
+        if ( degrees != null ) {
+            degrees[node1]++;
+            degrees[node2]++;
+        }
+    }
+
+    int degree(int node){
+        return degrees[node];
+    }
+
+    int size(){
+        return numberOfEdges;
+    }
+
+    // Symmetrized CSR network, neighbors of every node keep the order in which edges were added
+    ContactNetwork toNetwork(){
+        int[] offsets = new int[N + 2];
+        long total = 0;
+        for (int node = 1; node <= N; node++){
+            total += degrees[node];
+            if ( total > Integer.MAX_VALUE - 8 ) {
+                throw new IllegalArgumentException("Too many links for a network held in int arrays");
+            }
+            offsets[node + 1] = (int) total;
+        }
+
+        int[] targets = new int[offsets[N + 1]];
+        int[] next = Arrays.copyOf(offsets, N + 1);
+        for (int edge = 0; edge < numberOfEdges; edge++){
+            targets[next[nodes1[edge]]++] = nodes2[edge];
+            targets[next[nodes2[edge]]++] = nodes1[edge];
+        }
+
+        return new ContactNetwork(offsets, targets);
+    }
+
+    // Simple network (no self-loops, no multiple links) on nodes 1..N from the edges of several
+    // lists. Neighbors of every node are sorted, and duplicates removed, in parallel.
+    static ContactNetwork toSimpleNetwork(int N, EdgeList... parts){
+        int[] offsets = new int[N + 2];
+        for (EdgeList part : parts) {
+            for (int edge = 0; edge < part.numberOfEdges; edge++) {
+                if ( part.nodes1[edge] != part.nodes2[edge] ) {
+                    offsets[part.nodes1[edge] + 1]++;
+                    offsets[part.nodes2[edge] + 1]++;
+                }
+            }
+        }
+        long total = 0;
+        for (int node = 1; node <= N; node++) {
+            total += offsets[node + 1];
+            if ( total > Integer.MAX_VALUE - 8 ) {
+                throw new IllegalArgumentException("Too many links for a network held in int arrays");
+            }
+            offsets[node + 1] = (int) total;
+        }
+
+        int[] targets = new int[offsets[N + 1]];
+        int[] next = Arrays.copyOf(offsets, N + 1);
+        for (EdgeList part : parts) {
+            for (int edge = 0; edge < part.numberOfEdges; edge++) {
+                int node1 = part.nodes1[edge];
+                int node2 = part.nodes2[edge];
+                if ( node1 != node2 ) {
+                    targets[next[node1]++] = node2;
+                    targets[next[node2]++] = node1;
+                }
+            }
+        }
+
+        // Sorting every neighbor list and counting its distinct neighbors
+        int[] distinct = new int[N + 2];
+        IntStream.rangeClosed(1, N).parallel().forEach(node -> {
+            int start = offsets[node];
+            int end = offsets[node + 1];
+            Arrays.sort(targets, start, end);
+            int count = 0;
+            for (int k = start; k < end; k++) {
+                if ( k == start || targets[k] != targets[k - 1] ) {
+                    count++;
+                }
+            }
+            distinct[node + 1] = count;
+        });
+        for (int node = 1; node <= N; node++) {
+            distinct[node + 1] += distinct[node];
+        }
+        if ( distinct[N + 1] == targets.length ) {
+            return new ContactNetwork(offsets, targets);
+        }
+
+        int[] simpleTargets = new int[distinct[N + 1]];
+        IntStream.rangeClosed(1, N).parallel().forEach(node -> {
+            int position = distinct[node];
+            for (int k = offsets[node]; k < offsets[node + 1]; k++) {
+                if ( k == offsets[node] || targets[k] != targets[k - 1] ) {
+                    simpleTargets[position++] = targets[k];
+                }
+            }
+        });
+        return new ContactNetwork(distinct, simpleTargets);
+    }
+}
@@ -0,0 +1,366 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Empirical contact network read from an edge list: one link per line as two non-negative integer
+// node ids separated by commas, semicolons or whitespace (network.csv, or most edge list formats).
+// Lines that do not start with a digit (headers, comments) are skipped, extra columns are ignored
+// and a line with a single id adds that node without links. The file is memory-mapped and parsed
+// in parallel chunks straight from the bytes, node ids are remapped to 1..N in increasing order of
+// the original ids (so network.csv files written by NetworkBuilder keep their ids), and duplicate
+// links and self-loops are dropped.
+//
+// The parsed network is cached next to the file (<file>.bin) and read back from there as long as
+// the file keeps the same size and modification time. Little endian cache layout:
+//
+//   header (40 bytes): int magic, int version, long file size, long file modification time,
+//                      int N, int number of neighbor entries, long unused
+//   original ids: long by node, then offsets (N + 2 ints) and neighbors as in ContactNetwork
+class EdgeListLoader implements NetworkGenerator {
+    static final int MAGIC = 0x53495247;    // "SIRG"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 40;
+
+    private static final long CHUNK_SIZE = 1 << 26;     // bytes parsed by one parallel task
+    private static final int MAX_LINE_LENGTH = 1 << 16;
+    private static final int WINDOW = 1 << 26;          // values mapped at once by the binary cache
+
+    private final Path path;
+    private final Path cachePath;
+    long[] originalIds;                     // id in the file by node, filled by generate
+
+    EdgeListLoader(Path path){
+        this.path = path;
+        this.cachePath = Paths.get(path.toString() + ".bin");
+    }
+
+    // The network of the file, the seed is not used
+    @Override
+    public ContactNetwork generate(long seed){
+        try {
+            return load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load the network " + path, e);
+        }
+    }
+
+    ContactNetwork load() throws IOException {
+        long fileSize = Files.size(path);
+        long modified = Files.getLastModifiedTime(path).toMillis();
+
+        if ( Files.exists(cachePath) ) {
+            ContactNetwork network = readCache(fileSize, modified);
+            if ( network != null ) {
+                return network;
+            }
+        }
+
+        ContactNetwork network = parse(fileSize);
+        writeCache(network, fileSize, modified);
+        return network;
+    }
+
+    //------------- Parsing
+    // Raw ids read from one chunk of the file: links, then nodes listed alone
+    private static class Chunk {
+        long[] ids1 = new long[1024];
+        long[] ids2 = new long[1024];
+        int numberOfLinks = 0;
+        long[] singles = new long[0];
+        int numberOfSingles = 0;
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+
+        void addLink(long id1, long id2){
+            if ( numberOfLinks == ids1.length ) {
+                ids1 = Arrays.copyOf(ids1, 2 * numberOfLinks);
+                ids2 = Arrays.copyOf(ids2, 2 * numberOfLinks);
+            }
+            ids1[numberOfLinks] = id1;
+            ids2[numberOfLinks] = id2;
+            numberOfLinks++;
+            minId = Math.min(minId, Math.min(id1, id2));
+            maxId = Math.max(maxId, Math.max(id1, id2));
+        }
+
+        void addSingle(long id){
+            if ( numberOfSingles == singles.length ) {
+                singles = Arrays.copyOf(singles, Math.max(16, 2 * numberOfSingles));
+            }
+            singles[numberOfSingles++] = id;
+            minId = Math.min(minId, id);
+            maxId = Math.max(maxId, id);
+        }
+    }
+
+    private ContactNetwork parse(long fileSize) throws IOException {
+        Chunk[] chunks = new Chunk[(int) ((fileSize + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            IntStream.range(0, chunks.length).parallel().forEach(chunk -> {
+                try {
+                    chunks[chunk] = parseChunk(file, fileSize, chunk * CHUNK_SIZE,
+                            Math.min(fileSize, (chunk + 1) * CHUNK_SIZE));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        long total = 0;
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+        for (Chunk chunk : chunks) {
+            total += 2L * chunk.numberOfLinks + chunk.numberOfSingles;
+            minId = Math.min(minId, chunk.minId);
+            maxId = Math.max(maxId, chunk.maxId);
+        }
+        if ( total > Integer.MAX_VALUE - 8 ) {
+            throw new IOException("Too many links to load: " + path);
+        }
+
+        // Ids in a range not much larger than the number of ids (typically 0..N-1 or 1..N) are ranked
+        // with a table over the range, sparse ids by sorting them and binary searching every endpoint
+        IdMap idMap = total > 0 && maxId - minId < Math.min(Integer.MAX_VALUE - 8, Math.max(1 << 20, 4 * total))
+                ? denseIds(chunks, minId, maxId)
+                : sparseIds(chunks, (int) total);
+        int N = originalIds.length;
+
+        // Remapping every chunk to node ids
+        EdgeList[] parts = new EdgeList[chunks.length];
+        IntStream.range(0, chunks.length).parallel().forEach(c -> {
+            Chunk chunk = chunks[c];
+            int[] nodes1 = new int[chunk.numberOfLinks];
+            int[] nodes2 = new int[chunk.numberOfLinks];
+            for (int link = 0; link < chunk.numberOfLinks; link++) {
+                nodes1[link] = idMap.node(chunk.ids1[link]);
+                nodes2[link] = idMap.node(chunk.ids2[link]);
+            }
+            parts[c] = new EdgeList(nodes1, nodes2, chunk.numberOfLinks);
+            chunks[c] = null;
+        });
+
+        return EdgeList.toSimpleNetwork(N, parts);
+    }
+
+    private interface IdMap {
+        int node(long id);
+    }
+
+    // Node of id is the number of distinct ids up to it, counted in a table indexed by id - minId
+    private IdMap denseIds(Chunk[] chunks, long minId, long maxId){
+        int[] rank = new int[(int) (maxId - minId + 1)];
+        for (Chunk chunk : chunks) {
+            for (int link = 0; link < chunk.numberOfLinks; link++) {
+                rank[(int) (chunk.ids1[link] - minId)] = 1;
+                rank[(int) (chunk.ids2[link] - minId)] = 1;
+            }
+            for (int single = 0; single < chunk.numberOfSingles; single++) {
+                rank[(int) (chunk.singles[single] - minId)] = 1;
+            }
+        }
+        int N = 0;
+        for (int i = 0; i < rank.length; i++) {
+            if ( rank[i] != 0 ) {
+                rank[i] = ++N;
+            }
+        }
+        originalIds = new long[N];
+        for (int i = 0; i < rank.length; i++) {
+            if ( rank[i] != 0 ) {
+                originalIds[rank[i] - 1] = minId + i;
+            }
+        }
+        return id -> rank[(int) (id - minId)];
+    }
+
+    // Distinct ids in increasing order, node n is ids[n - 1]
+    private IdMap sparseIds(Chunk[] chunks, int total){
+        long[] ids = new long[total];
+        int position = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.ids1, 0, ids, position, chunk.numberOfLinks);
+            System.arraycopy(chunk.ids2, 0, ids, position + chunk.numberOfLinks, chunk.numberOfLinks);
+            System.arraycopy(chunk.singles, 0, ids, position + 2 * chunk.numberOfLinks, chunk.numberOfSingles);
+            position += 2 * chunk.numberOfLinks + chunk.numberOfSingles;
+        }
+        Arrays.parallelSort(ids);
+        int N = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if ( i == 0 || ids[i] != ids[i - 1] ) {
+                ids[N++] = ids[i];
+            }
+        }
+        long[] sorted = Arrays.copyOf(ids, N);
+        originalIds = sorted;
+        return id -> 1 + Arrays.binarySearch(sorted, id);
+    }
+
+    // Parses the lines starting in [start, end)
+    private Chunk parseChunk(FileChannel file, long fileSize, long start, long end) throws IOException {
+        long mapEnd = Math.min(fileSize, end + MAX_LINE_LENGTH);
+        long mapStart = Math.max(0, start - 1);
+        MappedByteBuffer bytes = file.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        int limit = (int) (mapEnd - mapStart);
+        int chunkEnd = (int) (end - mapStart);
+
+        // A line starting before this chunk belongs to the previous one
+        int i = (int) (start - mapStart);
+        if ( start > 0 ) {
+            while ( i - 1 < limit && bytes.get(i - 1) != '\n' ) {
+                i++;
+            }
+        }
+
+        Chunk chunk = new Chunk();
+        while ( i < chunkEnd ) {
+            int lineStart = i;
+            while ( i < limit && isBlank(bytes.get(i)) ) {
+                i++;
+            }
+
+            if ( i < limit && isDigit(bytes.get(i)) ) {
+                long id1 = 0;
+                while ( i < limit && isDigit(bytes.get(i)) ) {
+                    id1 = 10 * id1 + (bytes.get(i++) - '0');
+                }
+                while ( i < limit && isSeparator(bytes.get(i)) ) {
+                    i++;
+                }
+                if ( i < limit && isDigit(bytes.get(i)) ) {
+                    long id2 = 0;
+                    while ( i < limit && isDigit(bytes.get(i)) ) {
+                        id2 = 10 * id2 + (bytes.get(i++) - '0');
+                    }
+                    chunk.addLink(id1, id2);
+                } else {
+                    chunk.addSingle(id1);
+                }
+            }
+
+            // Rest of the line
+            while ( i < limit && bytes.get(i) != '\n' ) {
+                i++;
+            }
+            if ( i == limit && mapEnd < fileSize ) {
+                throw new IOException("Line longer than " + MAX_LINE_LENGTH + " bytes at " + (mapStart + lineStart));
+            }
+            i++;
+        }
+        return chunk;
+    }
+
+    private static boolean isDigit(byte b){
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isBlank(byte b){
+        return b == ' ' || b == '\t';
+    }
+
+    private static boolean isSeparator(byte b){
+        return b == ',' || b == ';' || b == ' ' || b == '\t';
+    }
+
+    //------------- Binary cache
+    // Network of the cache, null if it was built from another version of the file
+    private ContactNetwork readCache(long fileSize, long modified) throws IOException {
+        try (FileChannel file = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            if ( file.size() < HEADER_SIZE ) {
+                return null;
+            }
+            MappedByteBuffer cache = file.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            cache.order(ByteOrder.LITTLE_ENDIAN);
+            if ( cache.getInt() != MAGIC || cache.getInt() != VERSION
+                    || cache.getLong() != fileSize || cache.getLong() != modified ) {
+                return null;
+            }
+            int N = cache.getInt();
+            int numberOfTargets = cache.getInt();
+            cache.getLong();
+            if ( file.size() != HEADER_SIZE + 8L * N + 4L * (N + 2) + 4L * numberOfTargets ) {
+                return null;
+            }
+
+            long[] ids = new long[N];
+            int[] offsets = new int[N + 2];
+            int[] targets = new int[numberOfTargets];
+            long position = HEADER_SIZE;
+            position = transfer(file, FileChannel.MapMode.READ_ONLY, position, ids);
+            position = transfer(file, FileChannel.MapMode.READ_ONLY, position, offsets);
+            transfer(file, FileChannel.MapMode.READ_ONLY, position, targets);
+            ContactNetwork network = new ContactNetwork(offsets, targets);
+            originalIds = ids;
+            return network;
+        }
+    }
+
+    private void writeCache(ContactNetwork network, long fileSize, long modified) throws IOException {
+        int N = network.size();
+        int numberOfTargets = (int) (2 * network.numberOfEdges());
+        long size = HEADER_SIZE + 8L * N + 4L * (N + 2) + 4L * numberOfTargets;
+
+        Path temporary = Paths.get(cachePath.toString() + ".tmp");
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer header = file.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(fileSize).putLong(modified)
+                    .putInt(N).putInt(numberOfTargets).putLong(0);
+
+            long position = HEADER_SIZE;
+            position = transfer(file, FileChannel.MapMode.READ_WRITE, position, originalIds);
+            position = transfer(file, FileChannel.MapMode.READ_WRITE, position, network.offsets());
+            position = transfer(file, FileChannel.MapMode.READ_WRITE, position, network.targets());
+            if ( position != size ) {
+                throw new IllegalStateException("Unexpected cache size");
+            }
+            file.force(false);
+        }
+        Files.move(temporary, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Reads or writes an array at a position of the file, through mapped windows so that arrays
+    // above 2 GB work, returns the position after it
+    private static long transfer(FileChannel file, FileChannel.MapMode mode, long position, long[] values)
+            throws IOException {
+        for (int from = 0; from < values.length; from += WINDOW) {
+            int length = Math.min(WINDOW, values.length - from);
+            LongBuffer window = file.map(mode, position + 8L * from, 8L * length)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            if ( mode == FileChannel.MapMode.READ_ONLY ) {
+                window.get(values, from, length);
+            } else {
+                window.put(values, from, length);
+            }
+        }
+        return position + 8L * values.length;
+    }
+
+    private static long transfer(FileChannel file, FileChannel.MapMode mode, long position, int[] values)
+            throws IOException {
+        for (int from = 0; from < values.length; from += WINDOW) {
+            int length = Math.min(WINDOW, values.length - from);
+            IntBuffer window = file.map(mode, position + 4L * from, 4L * length)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            if ( mode == FileChannel.MapMode.READ_ONLY ) {
+                window.get(values, from, length);
+            } else {
+                window.put(values, from, length);
+            }
+        }
+        return position + 4L * values.length;
+    }
+}
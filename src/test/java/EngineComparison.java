@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Runs the same experiments with a reference engine and another one, on the same network, IC and
+// RNG streams, and reports how much faster the other engine is and how far its results are from the
+// reference: the final size, duration and peak prevalence of the experiments are compared by the
+// z-score of their difference in mean and by the two-sample Kolmogorov-Smirnov statistic D, which
+// stays under the 5% critical value when the two engines sample the same distribution. Engines
+// draw their randomness differently, so experiments are not compared one by one. Arguments are those
+// of ParameterSweep, single values only, plus reference and engine (EngineType), e.g.
+//
+//   java EngineComparison N=1000000 p=5e-6 experiments=20 engine=DeltaStepping outputPath=out/
+//
+// and the agreement check of LazyNextReaction in a model with reinfection, where its contacts must
+// restart when nodes become susceptible again (no experiment may go extinct early):
+//
+//   java EngineComparison N=10 p=1 R0=20 model=SIS initialInfected=2 maxTime=50 experiments=400
+//        engine=LazyNextReaction outputPath=out/
+//
+// or through Maven: mvn -B -Pcompare verify -Dcompare.args="N=1000000 p=5e-6 engine=DeltaStepping".
+// Experiments run one at a time, with all the threads of the common ForkJoinPool for the engines
+// that use them (-Djava.util.concurrent.ForkJoinPool.common.parallelism), and write no output other
+// than outputPath/engineComparison.csv.
+class EngineComparison {
+    private static final String[] STATISTICS = {"finalSize", "duration", "peakPrevalence"};
+    private static final double KS_CRITICAL = 1.358;    // c(0.05) of the two-sample KS test
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if ( option.length != 2 ) {
+                throw new IllegalArgumentException("Expected name=value, got " + arg);
+            }
+            if ( option[0].equals("config") ) {
+                options.putAll(ParameterSweep.readConfig(Paths.get(option[1])));
+            } else {
+                options.put(option[0], option[1]);
+            }
+        }
+        if ( options.containsKey("experiments") ) {
+            options.put("numberExperiments", options.remove("experiments"));
+        }
+        EngineType reference = EngineType.valueOf(options.getOrDefault("reference", EngineType.NextReaction.name()));
+        options.remove("reference");
+        EngineType engine = EngineType.valueOf(options.getOrDefault("engine", EngineType.DeltaStepping.name()));
+        options.remove("engine");
+
+        Parameters parameters = new Parameters();
+        SimParameters simParameters = new SimParameters();
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            ParameterSweep.set(parameters, simParameters, option.getKey(), option.getValue());
+        }
+
+        ContactNetwork network = Master.buildNetwork(parameters, simParameters);
+        Master.setTransmissionRate(parameters, network);
+        EpidemicModel model = EpidemicModel.create(parameters.model, parameters);
+        IC ic = new IC(0.0, parameters, model, network,
+                RandomStream.create(simParameters.randomType, simParameters.randomSeed, 0));
+
+        Results referenceResults = run(reference, ic, network, parameters, simParameters);
+        Results engineResults = run(engine, ic, network, parameters, simParameters);
+
+        Path outputPath = Paths.get(simParameters.outputPath);
+        Files.createDirectories(outputPath);
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(outputPath.resolve("engineComparison.csv")))) {
+            csv.println("statistic, " + reference + " mean, " + reference + " sd, " + engine + " mean, "
+                    + engine + " sd, z, D, D critical");
+            System.out.printf("%d experiments, N=%d, %s: %s %.4f s per experiment, %s %.4f s, speedup %.2f%n",
+                    simParameters.numberExperiments, parameters.N, parameters.model,
+                    reference, referenceResults.seconds, engine, engineResults.seconds,
+                    referenceResults.seconds / engineResults.seconds);
+            System.out.printf("%-16s %14s %12s %14s %12s %8s %8s %10s%n", "statistic",
+                    reference + " mean", "sd", engine + " mean", "sd", "z", "D", "D critical");
+
+            for (int statistic = 0; statistic < STATISTICS.length; statistic++) {
+                double[] x = referenceResults.values[statistic];
+                double[] y = engineResults.values[statistic];
+                double z = (mean(y) - mean(x)) / Math.sqrt(variance(x) / x.length + variance(y) / y.length);
+                double d = kolmogorovSmirnov(x, y);
+                double critical = KS_CRITICAL * Math.sqrt((double) (x.length + y.length) / x.length / y.length);
+
+                csv.println(STATISTICS[statistic] + ", " + mean(x) + ", " + Math.sqrt(variance(x)) + ", "
+                        + mean(y) + ", " + Math.sqrt(variance(y)) + ", " + z + ", " + d + ", " + critical);
+                System.out.printf("%-16s %14.4g %12.4g %14.4g %12.4g %8.2f %8.4f %10.4f%n", STATISTICS[statistic],
+                        mean(x), Math.sqrt(variance(x)), mean(y), Math.sqrt(variance(y)), z, d, critical);
+            }
+            csv.println("secondsPerExperiment, " + referenceResults.seconds + ", , " + engineResults.seconds
+                    + ", , , , ");
+        }
+    }
+
+    // Experiments of an engine, one after the other with the stopping rules of the run
+    private static Results run(EngineType engineType, IC ic, ContactNetwork network,
+                               Parameters parameters, SimParameters simParameters){
+        Results results = new Results(ic.initialState.getModel(), simParameters.numberExperiments);
+        SimulationContext context = new SimulationContext(engineType, ic, parameters,
+                Master.stoppingRules(simParameters), RunMetrics.NONE, simParameters.historyMemoryBudget);
+
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < simParameters.numberExperiments; i++) {
+                int experiment = simParameters.firstExperiment + i;
+                context.runExperiment(experiment, RandomStream.create(simParameters.randomType, simParameters.randomSeed, experiment),
+                        network, parameters, results);
+            }
+        } finally {
+            context.close();
+        }
+        results.seconds = (System.nanoTime() - start) / 1e9 / simParameters.numberExperiments;
+        return results;
+    }
+
+    private static double mean(double[] values){
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static double variance(double[] values){
+        double mean = mean(values);
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return sum / (values.length - 1);
+    }
+
+    // Largest distance between the empirical distribution functions of two samples
+    private static double kolmogorovSmirnov(double[] x, double[] y){
+        double[] sortedX = x.clone();
+        double[] sortedY = y.clone();
+        Arrays.sort(sortedX);
+        Arrays.sort(sortedY);
+        double d = 0;
+        int i = 0;
+        int j = 0;
+        while ( i < sortedX.length && j < sortedY.length ) {
+            double value = Math.min(sortedX[i], sortedY[j]);
+            while ( i < sortedX.length && sortedX[i] == value ) {
+                i++;
+            }
+            while ( j < sortedY.length && sortedY[j] == value ) {
+                j++;
+            }
+            d = Math.max(d, Math.abs((double) i / sortedX.length - (double) j / sortedY.length));
+        }
+        return d;
+    }
+
+    // Statistics of every experiment, collected as an output sink: prevalence (nodes in infectious
+    // compartments) after every reaction, final size (nodes out of the initial compartment) and
+    // duration once the experiment ends
+    private static class Results implements OutputSink {
+        private final EpidemicModel model;
+        final double[][] values;
+        double seconds;
+        private int index = 0;
+        private long peakPrevalence = 0;
+
+        Results(EpidemicModel model, int numberExperiments){
+            this.model = model;
+            this.values = new double[STATISTICS.length][numberExperiments];
+        }
+
+        @Override
+        public void printNetworkState(int experiment, NetworkState networkState){
+        }
+
+        @Override
+        public void printSummarizedNetworkState(int experiment, NetworkState networkState){
+            long prevalence = 0;
+            for (int compartment = 0; compartment < model.numberOfCompartments(); compartment++) {
+                if ( model.infectious[compartment] ) {
+                    prevalence += networkState.getCount(compartment);
+                }
+            }
+            peakPrevalence = Math.max(peakPrevalence, prevalence);
+        }
+
+        @Override
+        public void printStoppingRule(int experiment, NetworkState finalState, long numberOfEvents, String stoppedBy){
+            values[0][index] = finalState.size() - finalState.getCount(model.initialCompartment);
+            values[1][index] = finalState.getTime();
+            values[2][index] = peakPrevalence;
+            index++;
+            peakPrevalence = 0;
+        }
+
+
+        @Override
+        public void close(){
+        }
+    }
+}
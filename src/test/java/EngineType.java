@@ -0,0 +1,10 @@
+public enum EngineType {
+    NextReaction,   // Simulation: one exponential transmission time per S contact of every infected node
+
+    Gillespie,      // GillespieSimulation: rejection sampling from the total transmission rate
+
+    LazyNextReaction,   // LazySimulation: one pending contact per infected node, target picked when it fires
+
+    DeltaStepping       // DeltaSteppingSimulation, experimental: infection times of a large outbreak settled in
+                        // parallel (SIR, SEIR), no speedup over NextReaction measured yet
+}
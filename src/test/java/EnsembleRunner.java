@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Runs the stochastic realizations of an ensemble concurrently on a fixed thread pool.
+// The network and the initial condition are shared read-only, every worker thread owns its own
+// simulation context, reused from one experiment to the next, and experiment k always runs on
+// stream k of the master seed (see RandomStream), so results do not depend on the number of threads,
+// on the order in which experiments run, or on the other experiments of the run: a range of
+// experiments, or a single one, can be rerun alone.
+class EnsembleRunner {
+    private final int numberThreads;
+    private final EngineType engineType;
+    private final RandomType randomType;
+    private final List<StoppingRule> stoppingRules;
+    private final RunMetrics metrics;
+    private final long historyMemoryBudget;     // by context, see ReactionHistory
+
+    EnsembleRunner(int numberThreads, EngineType engineType, RandomType randomType,
+                   List<StoppingRule> stoppingRules, RunMetrics metrics, long historyMemoryBudget){
+        this.numberThreads = numberThreads;
+        this.engineType = engineType;
+        this.randomType = randomType;
+        this.stoppingRules = stoppingRules;
+        this.metrics = metrics;
+        this.historyMemoryBudget = historyMemoryBudget;
+    }
+
+    // Runs experiments firstExperiment to firstExperiment + numberExperiments - 1. Returns, or throws
+    // when an experiment fails, only once no worker is running, so the output can be closed then.
+    void run(int firstExperiment, int numberExperiments, long randomSeed, IC ic,
+             ContactNetwork network, Parameters parameters, OutputSink output){
+
+        // Simulation context by worker thread, all of them closed once the pool has terminated
+        Queue<SimulationContext> created = new ConcurrentLinkedQueue<>();
+        ThreadLocal<SimulationContext> contexts = ThreadLocal.withInitial(() -> {
+            SimulationContext context = new SimulationContext(engineType, ic, parameters, stoppingRules, metrics,
+                    historyMemoryBudget);
+            created.add(context);
+            return context;
+        });
+
+        RuntimeException failure = null;
+        ExecutorService executor = Executors.newFixedThreadPool(numberThreads);
+        try {
+            List<Future<?>> experiments = new ArrayList<>();
+            for (int experiment = firstExperiment; experiment < firstExperiment + numberExperiments; experiment++){
+                int exp = experiment;
+                experiments.add(executor.submit(() ->
+                        contexts.get().runExperiment(exp, RandomStream.create(randomType, randomSeed, exp),
+                                network, parameters, output)));
+            }
+
+            for (Future<?> experiment : experiments){
+                experiment.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new IllegalStateException("Ensemble interrupted", e);
+            throw failure;
+        } catch (ExecutionException e) {
+            failure = new IllegalStateException("Experiment failed", e.getCause());
+            throw failure;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            executor.shutdownNow();
+            awaitTermination(executor);
+            closeAll(created, failure);
+        }
+    }
+
+    // Only called once no worker uses the contexts. Closes every one of them even if closing one fails,
+    // failures to close are added to the one the run ends with, if any
+    private static void closeAll(Queue<SimulationContext> contexts, RuntimeException runFailure){
+        RuntimeException failure = null;
+        for (SimulationContext context : contexts) {
+            try {
+                context.close();
+            } catch (RuntimeException e) {
+                if ( runFailure != null ) {
+                    runFailure.addSuppressed(e);
+                } else if ( failure == null ) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+
+    // Engines do not check for interrupts: an experiment already running when another one fails runs to
+    // its end. An interrupt does not cut the wait short, it is kept for the caller.
+    private static void awaitTermination(ExecutorService executor){
+        boolean interrupted = false;
+        while ( !executor.isTerminated() ) {
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if ( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
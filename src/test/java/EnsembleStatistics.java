@@ -0,0 +1,250 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Ensemble statistics computed while the experiments run, instead of from one summary row per
+// event. The number of nodes in every compartment is resampled onto a fixed time grid (the count
+// at grid time g is the one after the last event at or before g, the final state after the last
+// event) and aggregated across experiments into a running mean and variance (Welford) and a
+// QuantileDigest per grid point and compartment. Final counts and durations are aggregated the
+// same way. Every worker thread fills its own accumulator, they are merged when the sink is
+// closed, and the results go to
+//
+//   ensembleStatistics.csv:  t, compartment, n, mean, sd, quantiles
+//   ensembleFinalState.csv:  compartment (or duration), n, mean, sd, quantiles
+//
+// so the output size is O(grid points) whatever the number of events and experiments.
+//
+// Only experiments that ran out of reactions or went extinct keep their final state to the end of
+// the grid and count in ensembleFinalState.csv. One stopped by another rule (MaxEvents, WallClock,
+// ...) is truncated: it is observed at the grid points before its last event only, and n is the
+// number of experiments observed at each point. The grid ends at maxTime, which every experiment
+// stopped by MaxTime reaches with its counts from before the event past it.
+class EnsembleStatistics implements OutputSink {
+    static final double[] QUANTILES = {0.05, 0.25, 0.5, 0.75, 0.95};
+    private static final double COMPRESSION = 100;
+
+    private final String outputPath;
+    private final EpidemicModel model;
+    private final double startTime;
+    private final double timeStep;
+    private final int gridPoints;
+    private final int numberOfCompartments;
+
+    private final List<Accumulator> allAccumulators = new ArrayList<>();
+    private final ThreadLocal<Accumulator> accumulators = ThreadLocal.withInitial(this::newAccumulator);
+
+    // Grid startTime, startTime + timeStep, ..., up to endTime included and no further than maxTime (of the
+    // MaxTime stopping rule, infinite without it)
+    EnsembleStatistics(String outputPath, EpidemicModel model, double startTime, double endTime, double timeStep,
+                       double maxTime){
+        if ( !(timeStep > 0) || endTime < startTime ) {
+            throw new IllegalArgumentException("Invalid time grid: " + startTime + " to " + endTime + " by " + timeStep);
+        }
+        this.outputPath = outputPath;
+        this.model = model;
+        this.startTime = startTime;
+        this.timeStep = timeStep;
+        this.gridPoints = (int) Math.max(0, Math.floor((Math.min(endTime, maxTime) - startTime) / timeStep + 1e-9) + 1);
+        this.numberOfCompartments = model.numberOfCompartments();
+    }
+
+    private Accumulator newAccumulator(){
+        Accumulator accumulator = new Accumulator();
+        synchronized (allAccumulators) {
+            allAccumulators.add(accumulator);
+        }
+        return accumulator;
+    }
+
+    double gridTime(int point){
+        return startTime + point * timeStep;
+    }
+
+    @Override
+    public void printNetworkState(int experiment, NetworkState networkState){
+    }
+
+    // Called with the initial state and after every event, by the thread running the experiment
+    @Override
+    public void printSummarizedNetworkState(int experiment, NetworkState networkState){
+        accumulators.get().stateChanged(experiment, networkState);
+    }
+
+    @Override
+    public void printStoppingRule(int experiment, NetworkState finalState, long numberOfEvents, String stoppedBy){
+        accumulators.get().stopped(experiment, stoppedBy);
+    }
+
+    @Override
+    public void endExperiment(int experiment){
+        accumulators.get().endExperiment(experiment);
+    }
+
+    // Merged statistics of every experiment that has ended so far
+    Accumulator merge(){
+        Accumulator merged = new Accumulator();
+        synchronized (allAccumulators) {
+            for (Accumulator accumulator : allAccumulators) {
+                merged.merge(accumulator);
+            }
+        }
+        return merged;
+    }
+
+    // Must only be called once every experiment writing to this sink has finished
+    @Override
+    public void close() throws IOException {
+        Accumulator merged = merge();
+
+        try (PrintWriter out = new PrintWriter(new FileWriter(outputPath + "ensembleStatistics.csv"))) {
+            out.println("t, compartment, n, mean, sd" + quantileColumns());
+            for (int point = 0; point < gridPoints; point++) {
+                for (int compartment = 0; compartment < numberOfCompartments; compartment++) {
+                    out.println(gridTime(point) + ", " + model.name(compartment) + ", "
+                            + merged.grid.row(point * numberOfCompartments + compartment));
+                }
+            }
+        }
+
+        try (PrintWriter out = new PrintWriter(new FileWriter(outputPath + "ensembleFinalState.csv"))) {
+            out.println("compartment, n, mean, sd" + quantileColumns());
+            for (int compartment = 0; compartment < numberOfCompartments; compartment++) {
+                out.println(model.name(compartment) + ", " + merged.finalState.row(compartment));
+            }
+            out.println("duration, " + merged.finalState.row(numberOfCompartments));
+        }
+    }
+
+    private static String quantileColumns(){
+        StringBuilder columns = new StringBuilder();
+        for (double quantile : QUANTILES) {
+            columns.append(", q").append(Math.round(100 * quantile));
+        }
+        return columns.toString();
+    }
+
+    // Running mean, variance and quantiles of a fixed number of variables
+    static class Moments {
+        final long[] n;
+        final double[] mean;
+        final double[] m2;          // sum of squared deviations from the mean
+        final QuantileDigest[] digests;
+
+        Moments(int variables){
+            this.n = new long[variables];
+            this.mean = new double[variables];
+            this.m2 = new double[variables];
+            this.digests = new QuantileDigest[variables];
+        }
+
+        void add(int variable, double value){
+            n[variable]++;
+            double delta = value - mean[variable];
+            mean[variable] += delta / n[variable];
+            m2[variable] += delta * (value - mean[variable]);
+            if ( digests[variable] == null ) {
+                digests[variable] = new QuantileDigest(COMPRESSION);
+            }
+            digests[variable].add(value);
+        }
+
+        // Pairwise update of Chan et al. for the moments, digests merge their centroids
+        void merge(Moments other){
+            for (int variable = 0; variable < n.length; variable++) {
+                if ( other.n[variable] == 0 ) {
+                    continue;
+                }
+                long total = n[variable] + other.n[variable];
+                double delta = other.mean[variable] - mean[variable];
+                mean[variable] += delta * other.n[variable] / total;
+                m2[variable] += other.m2[variable] + delta * delta * n[variable] * other.n[variable] / total;
+                n[variable] = total;
+                if ( digests[variable] == null ) {
+                    digests[variable] = new QuantileDigest(COMPRESSION);
+                }
+                digests[variable].merge(other.digests[variable]);
+            }
+        }
+
+        double standardDeviation(int variable){
+            return n[variable] > 1 ? Math.sqrt(m2[variable] / (n[variable] - 1)) : Double.NaN;
+        }
+
+        String row(int variable){
+            StringBuilder row = new StringBuilder();
+            row.append(n[variable]).append(", ").append(n[variable] > 0 ? mean[variable] : Double.NaN)
+                    .append(", ").append(standardDeviation(variable));
+            for (double quantile : QUANTILES) {
+                row.append(", ").append(digests[variable] == null ? Double.NaN : digests[variable].quantile(quantile));
+            }
+            return row.toString();
+        }
+    }
+
+    // Statistics of the experiments run by one thread, and the experiment it is running
+    class Accumulator {
+        final Moments grid = new Moments(gridPoints * numberOfCompartments);
+        final Moments finalState = new Moments(numberOfCompartments + 1);     // counts, then duration
+
+        private int experiment = -1;
+        private int nextPoint;                  // first grid point not filled yet
+        private final long[] counts = new long[numberOfCompartments];    // counts since the last event
+        private double time;
+        private boolean truncated;              // stopped by a rule before reaching a final state
+
+        void stateChanged(int experiment, NetworkState networkState){
+            if ( experiment != this.experiment ) {
+                this.experiment = experiment;
+                nextPoint = 0;
+                truncated = false;
+            } else {
+                fillUntil(networkState.getTime());
+            }
+            for (int compartment = 0; compartment < numberOfCompartments; compartment++) {
+                counts[compartment] = networkState.getCount(compartment);
+            }
+            time = networkState.getTime();
+        }
+
+        // Without a report of the rule that stopped it (e.g. replayed from a log), an experiment is final
+        void stopped(int experiment, String stoppedBy){
+            if ( experiment == this.experiment ) {
+                truncated = !stoppedBy.equals(SimulationEngine.NO_REACTIONS_TO_COME)
+                        && !stoppedBy.equals(StoppingRule.EXTINCTION);
+            }
+        }
+
+        void endExperiment(int experiment){
+            if ( experiment != this.experiment ) {
+                return;
+            }
+            if ( !truncated ) {
+                fillUntil(Double.POSITIVE_INFINITY);
+                for (int compartment = 0; compartment < numberOfCompartments; compartment++) {
+                    finalState.add(compartment, counts[compartment]);
+                }
+                finalState.add(numberOfCompartments, time);
+            }
+            this.experiment = -1;
+        }
+
+        // Grid points before t get the counts since the last event. A point at t itself is left to the
+        // next call, so that it gets the counts after the events at t: at or before g, as above.
+        private void fillUntil(double t){
+            while ( nextPoint < gridPoints && gridTime(nextPoint) < t ) {
+                for (int compartment = 0; compartment < numberOfCompartments; compartment++) {
+                    grid.add(nextPoint * numberOfCompartments + compartment, counts[compartment]);
+                }
+                nextPoint++;
+            }
+        }
+
+        void merge(Accumulator other){
+            grid.merge(other.grid);
+            finalState.merge(other.finalState);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Compartmental model compiled into a dispatch table over compartment indices. A model has
+// - spontaneous transitions: a node leaves compartment c for spontaneousTarget[c] after a period
+//   drawn from spontaneousPeriod[c] (at most one per compartment),
+// - contact transitions: a node in compartment s moves to contactTarget[s] after being contacted
+//   by a neighbor in compartment c, at rate contactRate[s][c] per contact (at most one target per s).
+// Compartments with a positive contact rate towards some other compartment are infectious. They
+// may only be left through their spontaneous transition, so the end of a node's infectious period
+// is known as soon as it enters the compartment.
+class EpidemicModel {
+    private final String[] names;
+    final int initialCompartment;       // compartment of everyone at the start (S)
+    final int seedCompartment;          // compartment of initially infected nodes (I), -1 if none
+
+    final int[] spontaneousTarget;      // by compartment, -1 when there is none
+    final PeriodDistribution[] spontaneousPeriod;
+    final int[] contactTarget;          // by compartment of the contacted node, -1 when it cannot be infected
+    final double[][] contactRate;       // [compartment of contacted node][compartment of contacting node]
+    final boolean[] infectious;         // by compartment
+    final boolean[] infected;           // infectious, or becoming infectious through spontaneous transitions (E)
+    final double maxContactRate;
+
+    private EpidemicModel(Builder builder){
+        int numberOfCompartments = builder.names.size();
+        this.names = builder.names.toArray(new String[0]);
+        this.initialCompartment = builder.initialCompartment;
+        this.seedCompartment = builder.seedCompartment;
+        this.spontaneousTarget = builder.spontaneousTarget;
+        this.spontaneousPeriod = builder.spontaneousPeriod;
+        this.contactTarget = builder.contactTarget;
+        this.contactRate = builder.contactRate;
+
+        this.infectious = new boolean[numberOfCompartments];
+        double max = 0;
+        for (int susceptible = 0; susceptible < numberOfCompartments; susceptible++) {
+            for (int compartment = 0; compartment < numberOfCompartments; compartment++) {
+                if ( contactRate[susceptible][compartment] > 0 ) {
+                    infectious[compartment] = true;
+                    max = Math.max(max, contactRate[susceptible][compartment]);
+                }
+            }
+        }
+        this.maxContactRate = max;
+
+        this.infected = new boolean[numberOfCompartments];
+        for (int compartment = 0; compartment < numberOfCompartments; compartment++) {
+            int next = compartment;
+            for (int step = 0; step < numberOfCompartments && next >= 0 && !infected[compartment]; step++) {
+                infected[compartment] = infectious[next];
+                next = spontaneousTarget[next];
+            }
+        }
+    }
+
+    static Builder builder(){
+        return new Builder();
+    }
+
+    // Standard models, transmission rate beta per contact and infectious period from the parameters
+    static EpidemicModel create(ModelType modelType, Parameters parameters){
+        PeriodDistribution infectiousPeriod = PeriodDistribution.infectiousPeriod(parameters);
+        switch (modelType) {
+            case SEIR:
+                return builder().compartments("S", "E", "I", "R").seed("I")
+                        .contact("S", "E", "I", parameters.beta)
+                        .spontaneous("E", "I", new ExponentialPeriod(parameters.latent_period))
+                        .spontaneous("I", "R", infectiousPeriod)
+                        .build();
+            case SIS:
+                return builder().compartments("S", "I").seed("I")
+                        .contact("S", "I", "I", parameters.beta)
+                        .spontaneous("I", "S", infectiousPeriod)
+                        .build();
+            case SIRS:
+                return builder().compartments("S", "I", "R").seed("I")
+                        .contact("S", "I", "I", parameters.beta)
+                        .spontaneous("I", "R", infectiousPeriod)
+                        .spontaneous("R", "S", new ExponentialPeriod(parameters.immunity_period))
+                        .build();
+            case SIR:
+            default:
+                return builder().compartments("S", "I", "R").seed("I")
+                        .contact("S", "I", "I", parameters.beta)
+                        .spontaneous("I", "R", infectiousPeriod)
+                        .build();
+        }
+    }
+
+    int numberOfCompartments(){
+        return names.length;
+    }
+
+    String name(int compartment){
+        return names[compartment];
+    }
+
+    int compartment(String name){
+        for (int compartment = 0; compartment < names.length; compartment++) {
+            if ( names[compartment].equals(name) ) {
+                return compartment;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compartment " + name);
+    }
+
+    // Number of nodes in infected compartments, the epidemic is over when it reaches 0
+    long infectedCount(NetworkState networkState){
+        long count = 0;
+        for (int compartment = 0; compartment < infected.length; compartment++) {
+            if ( infected[compartment] ) {
+                count += networkState.getCount(compartment);
+            }
+        }
+        return count;
+    }
+
+    //------------- Binary form, for the headers of the binary output files
+    // Names and transition targets only: enough to replay and label recorded transitions
+    void writeStructure(ByteBuffer buffer){
+        buffer.putInt(names.length).putInt(initialCompartment).putInt(seedCompartment);
+        for (int compartment = 0; compartment < names.length; compartment++) {
+            byte[] name = names[compartment].getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(name.length).put(name);
+            buffer.putInt(spontaneousTarget[compartment]).putInt(contactTarget[compartment]);
+        }
+    }
+
+    // Model read back from writeStructure: transitions without their rates and periods
+    static EpidemicModel readStructure(ByteBuffer buffer){
+        int numberOfCompartments = buffer.getInt();
+        int initialCompartment = buffer.getInt();
+        int seedCompartment = buffer.getInt();
+
+        String[] names = new String[numberOfCompartments];
+        int[] spontaneousTargets = new int[numberOfCompartments];
+        int[] contactTargets = new int[numberOfCompartments];
+        for (int compartment = 0; compartment < numberOfCompartments; compartment++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            names[compartment] = new String(name, StandardCharsets.UTF_8);
+            spontaneousTargets[compartment] = buffer.getInt();
+            contactTargets[compartment] = buffer.getInt();
+        }
+
+        Builder builder = builder().compartments(names);
+        builder.initialCompartment = initialCompartment;
+        builder.seedCompartment = seedCompartment;
+        System.arraycopy(spontaneousTargets, 0, builder.spontaneousTarget, 0, numberOfCompartments);
+        System.arraycopy(contactTargets, 0, builder.contactTarget, 0, numberOfCompartments);
+        return new EpidemicModel(builder);
+    }
+
+    static class Builder {
+        private final List<String> names = new ArrayList<>();
+        private int initialCompartment = 0;
+        private int seedCompartment = -1;
+        private int[] spontaneousTarget;
+        private PeriodDistribution[] spontaneousPeriod;
+        private int[] contactTarget;
+        private double[][] contactRate;
+
+        // Defines the compartments, the first one is where everyone starts
+        Builder compartments(String... compartmentNames){
+            if ( !names.isEmpty() ) {
+                throw new IllegalStateException("Compartments are already defined");
+            }
+            if ( compartmentNames.length == 0 || compartmentNames.length > Byte.MAX_VALUE ) {
+                throw new IllegalArgumentException("A model needs between 1 and 127 compartments");
+            }
+            names.addAll(Arrays.asList(compartmentNames));
+
+            int numberOfCompartments = compartmentNames.length;
+            spontaneousTarget = new int[numberOfCompartments];
+            spontaneousPeriod = new PeriodDistribution[numberOfCompartments];
+            contactTarget = new int[numberOfCompartments];
+            contactRate = new double[numberOfCompartments][numberOfCompartments];
+            Arrays.fill(spontaneousTarget, -1);
+            Arrays.fill(contactTarget, -1);
+            return this;
+        }
+
+        // Compartment that initially infected nodes are put in
+        Builder seed(String compartment){
+            seedCompartment = index(compartment);
+            return this;
+        }
+
+        Builder spontaneous(String from, String to, PeriodDistribution period){
+            int compartment = index(from);
+            if ( spontaneousTarget[compartment] >= 0 ) {
+                throw new IllegalArgumentException("Compartment " + from + " already has a spontaneous transition");
+            }
+            spontaneousTarget[compartment] = index(to);
+            spontaneousPeriod[compartment] = period;
+            return this;
+        }
+
+        // A node in from moves to to when contacted by a neighbor in by, at rate per contact
+        Builder contact(String from, String to, String by, double rate){
+            int compartment = index(from);
+            if ( contactTarget[compartment] >= 0 && contactTarget[compartment] != index(to) ) {
+                throw new IllegalArgumentException("Compartment " + from + " already has a contact transition");
+            }
+            contactTarget[compartment] = index(to);
+            contactRate[compartment][index(by)] = rate;
+            return this;
+        }
+
+        EpidemicModel build(){
+            EpidemicModel model = new EpidemicModel(this);
+            for (int compartment = 0; compartment < names.size(); compartment++) {
+                if ( model.infectious[compartment] && contactTarget[compartment] >= 0 ) {
+                    throw new IllegalArgumentException("Infectious compartment " + names.get(compartment)
+                            + " can only be left through a spontaneous transition");
+                }
+            }
+            return model;
+        }
+
+        private int index(String name){
+            int compartment = names.indexOf(name);
+            if ( compartment < 0 ) {
+                throw new IllegalArgumentException("Unknown compartment " + name);
+            }
+            return compartment;
+        }
+    }
+}
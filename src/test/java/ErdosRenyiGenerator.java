@@ -0,0 +1,76 @@
+// Erdös-Renyi network: every pair of nodes is linked with probability p. Generated sequentially from
+// a single SplitMix64 stream of the seed.
+class ErdosRenyiGenerator implements NetworkGenerator {
+    // Below this link probability the network is generated by skipping over absent links
+    static final double SPARSE_THRESHOLD = 0.1;
+
+    private final int N;
+    private final double p;
+
+    ErdosRenyiGenerator(int N, double p){
+        this.N = N;
+        this.p = p;
+    }
+
+    @Override
+    public ContactNetwork generate(long seed){
+        RandomStream random = RandomStream.create(RandomType.SplitMix64, seed, 0);
+
+        // Initializing network with no contacts
+        EdgeList edges = new EdgeList(N);
+
+        // Filling in contacts, connections are symmetrized by the CSR build
+        if ( p < SPARSE_THRESHOLD ) {
+            addSparseLinks(edges, random);
+        } else {
+            addDenseLinks(edges, random);
+        }
+
+        // Capturing unconnected nodes and assigning them 1 connection (not to themselves)
+        for (int i = 1; i <= N; i++) {
+            if (edges.degree(i) == 0) {
+                int j = 1 + random.nextInt(N);
+                while (j == i && N > 1) {
+                    j = 1 + random.nextInt(N);
+                }
+
+                edges.add(i, j);
+            }
+        }
+
+        return edges.toNetwork();
+    }
+
+    // Tests every pair of nodes, O(N^2)
+    private void addDenseLinks(EdgeList edges, RandomStream random){
+        for (int i = 1; i <= N; i++){
+            for (int j = i + 1; j <= N; j++){
+                if ( random.nextFloat() <= p ) {
+                    edges.add(i, j);
+                }
+            }
+        }
+    }
+
+    // Batagelj-Brandes geometric skipping: the gap to the next present link among the pairs
+    // (1,2), (1,3), (2,3), (1,4), ... is geometric, so only present links are visited, O(N + E)
+    private void addSparseLinks(EdgeList edges, RandomStream random){
+        if ( p <= 0 ) {
+            return;
+        }
+        double logOneMinusP = Math.log(1 - p);
+
+        int v = 2;
+        long w = 0;
+        while ( v <= N ) {
+            w += 1 + (long) Math.floor(- random.nextExponential() / logOneMinusP);
+            while ( w >= v && v <= N ) {
+                w -= v - 1;
+                v++;
+            }
+            if ( v <= N ) {
+                edges.add((int) w, v);
+            }
+        }
+    }
+}
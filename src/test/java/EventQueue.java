@@ -0,0 +1,181 @@
+import java.util.Arrays;
+
+// Indexed binary min-heap of pending reactions keyed by primitive event time.
+// Every node owns two handles: one for its pending infection (handle = node) and one for
+// its pending recovery (handle = N + 1 + node), so each node has at most one of each queued
+// and rescheduling or cancelling them is O(log N) without any per-event allocation.
+class EventQueue {
+    private final int recoveryOffset;
+    private final double[] times;       // event time by handle
+    private final int[] sources;        // infection source by handle
+    private final int[] heap;           // handles in heap order
+    private final int[] positions;      // position in heap by handle, -1 when not queued
+    private int size = 0;
+    private long supersededInfections = 0;      // pending infections replaced by an earlier one
+
+    EventQueue(int N){
+        this.recoveryOffset = N + 1;
+        this.times = new double[2 * (N + 1)];
+        this.sources = new int[2 * (N + 1)];
+        this.heap = new int[2 * (N + 1)];
+        this.positions = new int[2 * (N + 1)];
+        Arrays.fill(positions, -1);
+    }
+
+    // Schedules the infection of target by source, replacing any infection already pending for target
+    void scheduleInfection(int sourceNode, int targetNode, double time){
+        if ( positions[targetNode] >= 0 ) {
+            supersededInfections++;
+        }
+        sources[targetNode] = sourceNode;
+        schedule(targetNode, time);
+    }
+
+    // Lazy scheduling (LazySimulation): the infection handle of a node holds its next outgoing contact
+    // instead of an incoming infection, nextNode() then being the source of the contact
+    void scheduleContact(int sourceNode, double time){
+        sources[sourceNode] = sourceNode;
+        schedule(sourceNode, time);
+    }
+
+    void scheduleRecovery(int node, double time){
+        schedule(recoveryOffset + node, time);
+    }
+
+    void cancelInfection(int targetNode){
+        remove(targetNode);
+    }
+
+    void cancelRecovery(int node){
+        remove(recoveryOffset + node);
+    }
+
+    // Time of the infection pending for a node, +Infinity if there is none
+    double infectionTime(int targetNode){
+        return positions[targetNode] < 0 ? Double.POSITIVE_INFINITY : times[targetNode];
+    }
+
+    // Time of the recovery pending for a node, +Infinity if there is none
+    double recoveryTime(int node){
+        int handle = recoveryOffset + node;
+        return positions[handle] < 0 ? Double.POSITIVE_INFINITY : times[handle];
+    }
+
+    // Infections replaced by scheduleInfection since the queue was created
+    long supersededInfections(){
+        return supersededInfections;
+    }
+
+    boolean isEmpty(){
+        return size == 0;
+    }
+
+    int size(){
+        return size;
+    }
+
+    // Empties the queue, O(number of queued events)
+    void clear(){
+        for (int i = 0; i < size; i++){
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    //------------- Next reaction
+    // Time of the earliest reaction, +Infinity when the queue is empty
+    double nextTime(){
+        return size == 0 ? Double.POSITIVE_INFINITY : times[heap[0]];
+    }
+
+    ReactionType nextType(){
+        return heap[0] < recoveryOffset ? ReactionType.Infection : ReactionType.Recovery;
+    }
+
+    // Infected node for an infection, recovering node for a recovery
+    int nextNode(){
+        return heap[0] < recoveryOffset ? heap[0] : heap[0] - recoveryOffset;
+    }
+
+    // Source node of the next reaction when it is an infection
+    int nextSource(){
+        return sources[heap[0]];
+    }
+
+    void removeNext(){
+        remove(heap[0]);
+    }
+
+    //------------- Heap maintenance
+    private void schedule(int handle, double time){
+        int position = positions[handle];
+        times[handle] = time;
+
+        if ( position < 0 ) {
+            heap[size] = handle;
+            positions[handle] = size;
+            size++;
+            siftUp(size - 1);
+        } else {
+            siftUp(position);
+            siftDown(positions[handle]);
+        }
+    }
+
+    private void remove(int handle){
+        int position = positions[handle];
+        if ( position < 0 ) {
+            return;
+        }
+
+        size--;
+        positions[handle] = -1;
+        if ( position < size ) {
+            int last = heap[size];
+            heap[position] = last;
+            positions[last] = position;
+            siftUp(position);
+            siftDown(positions[last]);
+        }
+    }
+
+    // Ties in time are broken by handle so that the order of events is deterministic
+    private boolean before(int handle1, int handle2){
+        return times[handle1] < times[handle2]
+                || ( times[handle1] == times[handle2] && handle1 < handle2 );
+    }
+
+    private void siftUp(int position){
+        int handle = heap[position];
+        while ( position > 0 ) {
+            int parent = (position - 1) >>> 1;
+            if ( !before(handle, heap[parent]) ) {
+                break;
+            }
+            heap[position] = heap[parent];
+            positions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = handle;
+        positions[handle] = position;
+    }
+
+    private void siftDown(int position){
+        int handle = heap[position];
+        int half = size >>> 1;
+        while ( position < half ) {
+            int child = 2 * position + 1;
+            if ( child + 1 < size && before(heap[child + 1], heap[child]) ) {
+                child++;
+            }
+            if ( !before(heap[child], handle) ) {
+                break;
+            }
+            heap[position] = heap[child];
+            positions[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = handle;
+        positions[handle] = position;
+    }
+}
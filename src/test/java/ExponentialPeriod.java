@@ -0,0 +1,17 @@
+class ExponentialPeriod implements PeriodDistribution {
+    private final double mean;
+
+    ExponentialPeriod(double mean){
+        this.mean = mean;
+    }
+
+    @Override
+    public double sample(RandomStream random){
+        return mean * random.nextExponential();
+    }
+
+    @Override
+    public double mean(){
+        return mean;
+    }
+}
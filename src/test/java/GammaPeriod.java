@@ -0,0 +1,51 @@
+// Gamma distributed period, sampled with Marsaglia & Tsang's squeeze method (2000): about one
+// normal (ziggurat) and one uniform draw per sample and no allocation. Shapes below 1 are sampled
+// as Gamma(shape + 1) * U^(1 / shape).
+class GammaPeriod implements PeriodDistribution {
+    private final double shape;
+    private final double scale;
+    private final double d;     // Marsaglia-Tsang constants for shape max(shape, shape + 1)
+    private final double c;
+
+    GammaPeriod(double shape, double scale){
+        if ( shape <= 0 || scale <= 0 ) {
+            throw new IllegalArgumentException("Gamma shape and scale must be positive: " + shape + ", " + scale);
+        }
+        this.shape = shape;
+        this.scale = scale;
+        this.d = (shape < 1 ? shape + 1 : shape) - 1.0 / 3;
+        this.c = 1 / Math.sqrt(9 * d);
+    }
+
+    @Override
+    public double sample(RandomStream random){
+        double sample;
+        while ( true ) {
+            double x;
+            double v;
+            do {
+                x = random.nextGaussian();
+                v = 1 + c * x;
+            } while ( v <= 0 );
+            v = v * v * v;
+
+            double u = random.nextDouble();
+            double xSquared = x * x;
+            if ( u < 1 - 0.0331 * xSquared * xSquared
+                    || Math.log(u) < 0.5 * xSquared + d * (1 - v + Math.log(v)) ) {
+                sample = d * v;
+                break;
+            }
+        }
+
+        if ( shape < 1 ) {
+            sample *= Math.pow(1 - random.nextDouble(), 1 / shape);
+        }
+        return scale * sample;
+    }
+
+    @Override
+    public double mean(){
+        return shape * scale;
+    }
+}
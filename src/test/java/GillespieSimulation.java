@@ -0,0 +1,171 @@
+import java.util.Arrays;
+
+// Optimized Gillespie engine (rejection sampling, Cota & Ferreira 2017). Contact attempts happen
+// at total rate maxContactRate * (sum of degrees of infectious nodes): the attempt's source is an
+// infectious node picked with probability proportional to its degree, by accepting a uniformly
+// picked infectious node with probability degree / maxDegree, and its target is a uniformly picked
+// neighbor. The attempt succeeds with probability contactRate / maxContactRate for the pair of
+// compartments, so it always does for S-I pairs in single-strain models, and is a rejected event
+// otherwise. Spontaneous transitions are scheduled per node in an EventQueue, as in the next-reaction
+// engine, so both engines sample the same process and any period distribution is handled exactly:
+// only the contact rates need to be constant between events. Each infection costs O(1) random draws
+// instead of O(degree).
+class GillespieSimulation extends SimulationEngine {
+    private RandomStream random;
+    private final EpidemicModel model;
+
+    private final EventQueue recoveriesToCome;  // only spontaneous transition handles are used
+    private final int[] infectedNodes;          // nodes in infectious compartments, in no particular order
+    private final int[] infectedPositions;      // position in infectedNodes by node, -1 when not infectious
+    private int numberInfected = 0;
+    private long infectedDegree = 0;            // sum of the degrees of infectious nodes
+    private int numberSusceptible = 0;          // nodes in compartments with a contact transition
+
+    GillespieSimulation(NetworkState initialState, Parameters parameters){
+        super(initialState);
+        this.model = initialState.getModel();
+        this.recoveriesToCome = new EventQueue(parameters.N);
+        this.infectedNodes = new int[parameters.N];
+        this.infectedPositions = new int[parameters.N + 1];
+        Arrays.fill(infectedPositions, -1);
+    }
+
+    @Override
+    void seedRNG(RandomStream random){
+        this.random = random;
+    }
+
+    @Override
+    void simulationSetUp(NetworkState initialState, ContactNetwork network, Parameters parameters){
+        recoveriesToCome.clear();
+        while ( numberInfected > 0 ) {
+            infectedPositions[infectedNodes[--numberInfected]] = -1;
+        }
+        infectedDegree = 0;
+
+        // Adding initially infectious nodes and spontaneous transitions, susceptible nodes are counted
+        // by compartment
+        for (int i = 0; i < numberOfActiveNodes; i++) {
+            int node = activeNodes[i];
+            enterCompartment(node, initialState.getState(node), initialState.getTime(), network);
+        }
+        numberSusceptible = 0;
+        for (int compartment = 0; compartment < model.numberOfCompartments(); compartment++) {
+            if ( model.contactTarget[compartment] >= 0 ) {
+                numberSusceptible += (int) initialState.getCount(compartment);
+            }
+        }
+    }
+
+    // Pending spontaneous transitions, or contacts that may still infect someone: infectious nodes
+    // with at least one link. Contacts only run forever in models where infectious nodes never leave
+    // their compartment (SI) and some susceptible nodes cannot be reached.
+    @Override
+    boolean hasReactionsToCome(){
+        return !recoveriesToCome.isEmpty() || ( numberInfected > 0 && infectedDegree > 0 && numberSusceptible > 0 );
+    }
+
+    // Contacts are not queued, only spontaneous transitions
+    @Override
+    int queueSize(){
+        return recoveriesToCome.size();
+    }
+
+    @Override
+    int reactionStep(NetworkState networkState,
+                     ReactionHistory reactionHistory,
+                     ContactNetwork network, Parameters parameters){
+
+        // Time of the next contact attempt, redrawn after every event (the rate is constant in between)
+        double attemptRate = model.maxContactRate * infectedDegree;
+        double attemptTime = networkState.getTime() + exponential(attemptRate);
+
+        // Without links to infectious nodes attemptTime is infinite, and so is the time of an empty queue
+        if ( !recoveriesToCome.isEmpty() && recoveriesToCome.nextTime() <= attemptTime ) {
+            double reactionTime = recoveriesToCome.nextTime();
+            int recoveringNode = recoveriesToCome.nextNode();
+            recoveriesToCome.removeNext();
+
+            int oldCompartment = networkState.getState(recoveringNode);
+            int newCompartment = model.spontaneousTarget[oldCompartment];
+
+            // Updating state in place
+            networkState.setTime(reactionTime);
+            networkState.setState(recoveringNode, newCompartment);
+            leaveCompartment(recoveringNode, oldCompartment, network);
+            enterCompartment(recoveringNode, newCompartment, reactionTime, network);
+
+            // Updating reaction history
+            reactionHistory.add(reactionTime, ReactionType.Recovery, recoveringNode, recoveringNode, newCompartment);
+
+            return recoveringNode;
+        }
+
+        networkState.setTime(attemptTime);
+
+        // Source picked proportionally to its degree
+        int maxDegree = network.maxDegree();
+        int sourceNode;
+        do {
+            sourceNode = infectedNodes[random.nextInt(numberInfected)];
+        } while ( random.nextInt(maxDegree) >= network.degree(sourceNode) );
+
+        // Uniform neighbor as target, contact accepted with probability rate / maxContactRate
+        int targetNode = network.neighbor(network.neighborsStart(sourceNode) + random.nextInt(network.degree(sourceNode)));
+        int oldCompartment = networkState.getState(targetNode);
+        double rate = model.contactRate[oldCompartment][networkState.getState(sourceNode)];
+        if ( rate == 0 || ( rate < model.maxContactRate && random.nextDouble() * model.maxContactRate >= rate ) ) {
+            return 0;
+        }
+        int newCompartment = model.contactTarget[oldCompartment];
+
+        // Updating state in place
+        networkState.setState(targetNode, newCompartment);
+        leaveCompartment(targetNode, oldCompartment, network);
+        enterCompartment(targetNode, newCompartment, attemptTime, network);
+
+        // Updating reaction history
+        reactionHistory.add(attemptTime, ReactionType.Infection, sourceNode, targetNode, newCompartment);
+
+        return targetNode;
+    }
+
+    private double exponential(double rate){
+        if ( rate == 0 ) {
+            return Double.POSITIVE_INFINITY;
+        } else {
+            return random.nextExponential() / rate;
+        }
+    }
+
+    private void enterCompartment(int node, int compartment, double currentTime, ContactNetwork network){
+        if ( model.infectious[compartment] ) {
+            infectedPositions[node] = numberInfected;
+            infectedNodes[numberInfected++] = node;
+            infectedDegree += network.degree(node);
+        }
+        if ( model.contactTarget[compartment] >= 0 ) {
+            numberSusceptible++;
+        }
+        if ( model.spontaneousTarget[compartment] >= 0 ) {
+            recoveriesToCome.scheduleRecovery(node, currentTime + model.spontaneousPeriod[compartment].sample(random));
+        }
+    }
+
+    private void leaveCompartment(int node, int compartment, ContactNetwork network){
+        // A contact may move a node out of a compartment that also has a spontaneous transition
+        recoveriesToCome.cancelRecovery(node);
+
+        if ( model.infectious[compartment] ) {
+            int position = infectedPositions[node];
+            int last = infectedNodes[--numberInfected];
+            infectedNodes[position] = last;
+            infectedPositions[last] = position;
+            infectedPositions[node] = -1;
+            infectedDegree -= network.degree(node);
+        }
+        if ( model.contactTarget[compartment] >= 0 ) {
+            numberSusceptible--;
+        }
+    }
+}
@@ -1,24 +1,131 @@
-import java.util.*;
+import java.util.Arrays;
 
+// Initial condition: every node in the initial compartment of the model but initialInfected seed
+// nodes, in its seed compartment, written straight into a NetworkState. The seeds are distinct nodes
+// picked by the seeding of the parameters:
+//
+//   Uniform: Floyd's algorithm, k draws whatever N, the state telling which nodes are already taken,
+//   DegreeWeighted: the end of a uniformly picked link, redrawn when already taken (sampling without
+//     replacement proportional to degree), O(k) expected draws while k is small against the links,
+//   Targeted: the k highest-degree nodes, sorted once.
+//
+// The seeds are drawn once, from stream 0 of the master seed, and shared by all experiments, or
+// with reseedEachExperiment drawn again by every experiment from its own stream: only the k seed
+// nodes change then, cleared and set in O(k) (see SimulationContext).
 class IC {
-    Random random = new Random(1234567890);
-    private Integer initialInfecteds = 20;
-    NetworkState initialState;
+    NetworkState initialState;      // without seeds when every experiment draws its own
 
-    IC(Double simulationStartTime, Integer N){
+    private final int initialInfecteds;
+    private final SeedingType seeding;
+    private final boolean reseedEachExperiment;
+    private final ContactNetwork network;
+    private final EpidemicModel model;
+    private int[] targets;          // Targeted seeds
 
-        NavigableMap<Integer, Compartments> state = new TreeMap<>();
+    IC(Double simulationStartTime, Parameters parameters, EpidemicModel model, ContactNetwork network,
+       RandomStream random){
+        this.initialInfecteds = parameters.initialInfected;
+        this.seeding = parameters.seeding;
+        this.reseedEachExperiment = parameters.reseedEachExperiment;
+        this.network = network;
+        this.model = model;
+        if ( initialInfecteds < 0 || initialInfecteds > parameters.N ) {
+            throw new IllegalArgumentException("Expected 0 to N initial infecteds, got " + initialInfecteds);
+        }
+        if ( initialInfecteds > 0 && model.seedCompartment < 0 ) {
+            throw new IllegalArgumentException("The model has no compartment to seed");
+        }
+        if ( seeding == SeedingType.DegreeWeighted && initialInfecteds > connectedNodes() ) {
+            throw new IllegalArgumentException("Fewer nodes with links than initial infecteds: " + initialInfecteds);
+        }
+        if ( seeding == SeedingType.Targeted ) {
+            this.targets = highestDegreeNodes(initialInfecteds);
+        }
 
         // Making everyone S at the start
-        for (int i = 1; i <= N; i++){
-            state.put(i, Compartments.S);
-        }
+        initialState = new NetworkState(simulationStartTime, parameters.N, model);
 
         // Introducing some Is
-        for (int i = 1; i <= initialInfecteds; i++){
-            state.put(1 + random.nextInt(N-1), Compartments.I);
+        if ( !reseedEachExperiment ) {
+            seed(initialState, new int[initialInfecteds], random);
         }
+    }
 
-        initialState = new NetworkState(simulationStartTime, state);
+    boolean reseedEachExperiment(){
+        return reseedEachExperiment;
+    }
+
+    int numberOfSeeds(){
+        return initialInfecteds;
+    }
+
+    // Picks the seeds of an experiment into seeds, of length numberOfSeeds(), and moves them to the
+    // seed compartment of state, where no node may be yet
+    void seed(NetworkState state, int[] seeds, RandomStream random){
+        int N = state.size();
+        int seedCompartment = model.seedCompartment;
+        switch (seeding) {
+            case DegreeWeighted:
+                int firstLink = network.neighborsStart(1);
+                int links = network.neighborsEnd(N) - firstLink;
+                for (int i = 0; i < seeds.length; i++) {
+                    int node;
+                    do {
+                        node = network.neighbor(firstLink + random.nextInt(links));
+                    } while ( state.getState(node) == seedCompartment );
+                    seeds[i] = node;
+                    state.setState(node, seedCompartment);
+                }
+                break;
+            case Targeted:
+                System.arraycopy(targets, 0, seeds, 0, seeds.length);
+                for (int node : seeds) {
+                    state.setState(node, seedCompartment);
+                }
+                break;
+            case Uniform:
+            default:
+                // Floyd: a uniform node of 1..j, or j itself if the node is already taken
+                for (int i = 0, j = N - seeds.length + 1; j <= N; i++, j++) {
+                    int node = 1 + random.nextInt(j);
+                    if ( state.getState(node) == seedCompartment ) {
+                        node = j;
+                    }
+                    seeds[i] = node;
+                    state.setState(node, seedCompartment);
+                }
+                break;
+        }
+    }
+
+    // Moves seeds back to the initial compartment
+    void unseed(NetworkState state, int[] seeds){
+        for (int node : seeds) {
+            state.setState(node, model.initialCompartment);
+        }
+    }
+
+    private int connectedNodes(){
+        int connected = 0;
+        for (int node = 1; node <= network.size(); node++) {
+            if ( network.degree(node) > 0 ) {
+                connected++;
+            }
+        }
+        return connected;
+    }
+
+    // Nodes sorted by decreasing degree then increasing id, as (maxDegree - degree, node) keys
+    private int[] highestDegreeNodes(int k){
+        long[] keys = new long[network.size()];
+        for (int node = 1; node <= network.size(); node++) {
+            keys[node - 1] = (long) (network.maxDegree() - network.degree(node)) << 32 | node;
+        }
+        Arrays.sort(keys);
+        int[] nodes = new int[k];
+        for (int i = 0; i < k; i++) {
+            nodes[i] = (int) keys[i];
+        }
+        return nodes;
     }
 }
@@ -0,0 +1,72 @@
+import java.util.stream.IntStream;
+
+// 2-D square lattice of rows x columns nodes, every node linked to its 4 nearest neighbors (fewer on
+// the borders unless periodic). The columns are the largest divisor of N not above sqrt(N), so
+// square N give square lattices. Built directly in CSR form, in parallel, with no randomness.
+class LatticeGenerator implements NetworkGenerator {
+    private final int rows;
+    private final int columns;
+    private final boolean periodic;
+
+    LatticeGenerator(int N, boolean periodic){
+        int divisor = (int) Math.sqrt(N);
+        while ( N % divisor != 0 ) {
+            divisor--;
+        }
+        this.columns = divisor;
+        this.rows = N / divisor;
+        this.periodic = periodic;
+    }
+
+    @Override
+    public ContactNetwork generate(long seed){
+        int N = rows * columns;
+
+        // Degrees, then neighbors in place
+        int[] offsets = new int[N + 2];
+        IntStream.rangeClosed(1, N).parallel().forEach(node -> offsets[node + 1] = neighbors(node, new int[4]));
+        for (int node = 1; node <= N; node++) {
+            offsets[node + 1] += offsets[node];
+        }
+
+        int[] targets = new int[offsets[N + 1]];
+        IntStream.rangeClosed(1, N).parallel().forEach(node -> {
+            int[] nodeNeighbors = new int[4];
+            int degree = neighbors(node, nodeNeighbors);
+            System.arraycopy(nodeNeighbors, 0, targets, offsets[node], degree);
+        });
+        return new ContactNetwork(offsets, targets);
+    }
+
+    // Distinct neighbors of a node (up, down, left, right), returns how many
+    private int neighbors(int node, int[] neighbors){
+        int row = (node - 1) / columns;
+        int column = (node - 1) % columns;
+        int degree = 0;
+        degree = addNeighbor(neighbors, degree, node, row - 1, column);
+        degree = addNeighbor(neighbors, degree, node, row + 1, column);
+        degree = addNeighbor(neighbors, degree, node, row, column - 1);
+        degree = addNeighbor(neighbors, degree, node, row, column + 1);
+        return degree;
+    }
+
+    private int addNeighbor(int[] neighbors, int degree, int node, int row, int column){
+        if ( periodic ) {
+            row = Math.floorMod(row, rows);
+            column = Math.floorMod(column, columns);
+        } else if ( row < 0 || row >= rows || column < 0 || column >= columns ) {
+            return degree;
+        }
+        int neighbor = row * columns + column + 1;
+        if ( neighbor == node ) {
+            return degree;
+        }
+        for (int i = 0; i < degree; i++) {
+            if ( neighbors[i] == neighbor ) {
+                return degree;
+            }
+        }
+        neighbors[degree] = neighbor;
+        return degree + 1;
+    }
+}
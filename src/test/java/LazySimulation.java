@@ -0,0 +1,180 @@
+// Next-reaction engine with lazy contacts: instead of drawing a transmission time for every
+// neighbor as soon as a node becomes infectious, each infectious node keeps a single pending
+// outgoing contact, at total rate degree * (largest contact rate of its compartment). When it
+// fires the target is a uniformly picked neighbor, the contact succeeds with probability
+// contactRate / largest rate for the target's current compartment, and the next contact of the
+// source is drawn, unless it falls after the source leaves its compartment. By memorylessness of
+// contacts this samples the same process as Simulation, for any spontaneous period distribution,
+// while the queue holds O(infectious nodes) contacts instead of O(their links), and no time is
+// drawn for contacts that a neighbor's earlier infection would supersede. Contacts with nodes that
+// cannot be infected are rejected events, which makes this engine best on dense or hub-heavy
+// networks where most of the eager draws are wasted. An infectious node stops drawing contacts while
+// no node can be infected, and is re-armed when one of its neighbors becomes susceptible again (SIS,
+// SIRS): no draw is discarded, so memorylessness keeps the process the same. Contacts only run
+// forever in models where infectious nodes never leave their compartment (SI) and some susceptible
+// nodes cannot be reached, as in GillespieSimulation.
+class LazySimulation extends SimulationEngine {
+    private RandomStream random;
+    private final EpidemicModel model;
+    private final double[] maxContactRate;  // by source compartment, the largest rate over targets
+
+    private final EventQueue reactionsToCome;   // next contact by source node, and spontaneous transitions
+    private final boolean[] idle;       // infectious nodes with no contact drawn for lack of susceptible nodes,
+                                        // only meaningful while the node is infectious
+
+    LazySimulation(NetworkState initialState, Parameters parameters){
+        super(initialState);
+        this.model = initialState.getModel();
+        this.reactionsToCome = new EventQueue(parameters.N);
+        this.idle = new boolean[parameters.N + 1];
+
+        this.maxContactRate = new double[model.numberOfCompartments()];
+        for (int source = 0; source < maxContactRate.length; source++) {
+            for (int target = 0; target < maxContactRate.length; target++) {
+                maxContactRate[source] = Math.max(maxContactRate[source], model.contactRate[target][source]);
+            }
+        }
+    }
+
+    @Override
+    void seedRNG(RandomStream random){
+        this.random = random;
+    }
+
+    @Override
+    void simulationSetUp(NetworkState initialState, ContactNetwork network, Parameters parameters){
+        reactionsToCome.clear();
+
+        // Spontaneous transitions first, contacts are bounded by them
+        for (int i = 0; i < numberOfActiveNodes; i++) {
+            int node = activeNodes[i];
+            int compartment = initialState.getState(node);
+            assignSpontaneousTransition(node, compartment, initialState.getTime());
+            assignNextContact(node, compartment, initialState, network);
+        }
+    }
+
+    private double exponential(double rate){
+        if ( rate == 0 ) {
+            return Double.POSITIVE_INFINITY;
+        } else {
+            return random.nextExponential() / rate;
+        }
+    }
+
+    private void assignSpontaneousTransition(int node, int compartment, double currentTime){
+        if ( model.spontaneousTarget[compartment] >= 0 ) {
+            reactionsToCome.scheduleRecovery(node, currentTime + model.spontaneousPeriod[compartment].sample(random));
+        }
+    }
+
+    // Next contact of an infectious node, if it happens before the node leaves its compartment. It
+    // replaces the pending one in place (a single sift when it is the contact that just fired).
+    private void assignNextContact(int sourceNode, int sourceCompartment, NetworkState networkState, ContactNetwork network){
+        idle[sourceNode] = false;
+        if ( model.infectious[sourceCompartment] && !hasSusceptibleNodes(networkState) ) {
+            idle[sourceNode] = true;
+        } else if ( model.infectious[sourceCompartment] ) {
+            double contactTime = networkState.getTime()
+                    + exponential(network.degree(sourceNode) * maxContactRate[sourceCompartment]);
+            if ( contactTime < Double.POSITIVE_INFINITY && contactTime <= reactionsToCome.recoveryTime(sourceNode) ) {
+                reactionsToCome.scheduleContact(sourceNode, contactTime);
+                return;
+            }
+        }
+        reactionsToCome.cancelInfection(sourceNode);
+    }
+
+    // Some node is in a compartment with a contact transition
+    private boolean hasSusceptibleNodes(NetworkState networkState){
+        for (int compartment = 0; compartment < model.numberOfCompartments(); compartment++) {
+            if ( model.contactTarget[compartment] >= 0 && networkState.getCount(compartment) > 0 ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Moves a node to a new compartment and draws the reactions that follow from it
+    private void enterCompartment(int node, int compartment, NetworkState networkState, ContactNetwork network){
+        networkState.setState(node, compartment);
+
+        // Whatever was pending for the node belonged to its previous compartment
+        reactionsToCome.cancelInfection(node);
+        reactionsToCome.cancelRecovery(node);
+
+        assignSpontaneousTransition(node, compartment, networkState.getTime());
+        assignNextContact(node, compartment, networkState, network);
+
+        // A node that can be infected again restarts the contacts of its idle infectious neighbors
+        if ( model.contactTarget[compartment] >= 0 ) {
+            for (int k = network.neighborsStart(node); k < network.neighborsEnd(node); k++) {
+                int neighbor = network.neighbor(k);
+                int neighborCompartment = networkState.getState(neighbor);
+                if ( idle[neighbor] && model.infectious[neighborCompartment] ) {
+                    assignNextContact(neighbor, neighborCompartment, networkState, network);
+                }
+            }
+        }
+    }
+
+    @Override
+    boolean hasReactionsToCome(){
+        return !reactionsToCome.isEmpty();
+    }
+
+    @Override
+    int queueSize(){
+        return reactionsToCome.size();
+    }
+
+    @Override
+    int reactionStep(NetworkState networkState,
+                     ReactionHistory reactionHistory,
+                     ContactNetwork network, Parameters parameters){
+
+        double reactionTime = reactionsToCome.nextTime();
+        networkState.setTime(reactionTime);
+
+        if ( reactionsToCome.nextType() == ReactionType.Infection ){
+
+            // Contact of the source with a uniform neighbor, then the next one of the source
+            int sourceNode = reactionsToCome.nextNode();
+
+            int sourceCompartment = networkState.getState(sourceNode);
+            int targetNode = network.neighbor(network.neighborsStart(sourceNode) + random.nextInt(network.degree(sourceNode)));
+            assignNextContact(sourceNode, sourceCompartment, networkState, network);
+
+            // Accepted with probability rate / maxContactRate
+            int targetCompartment = networkState.getState(targetNode);
+            double rate = model.contactRate[targetCompartment][sourceCompartment];
+            double maxRate = maxContactRate[sourceCompartment];
+            if ( rate == 0 || ( rate < maxRate && random.nextDouble() * maxRate >= rate ) ) {
+                return 0;
+            }
+            int newCompartment = model.contactTarget[targetCompartment];
+
+            // Updating state in place, with the reactions of the new compartment
+            enterCompartment(targetNode, newCompartment, networkState, network);
+
+            // Updating reaction history
+            reactionHistory.add(reactionTime, ReactionType.Infection, sourceNode, targetNode, newCompartment);
+
+            return targetNode;
+
+        } else {
+            int recoveringNode = reactionsToCome.nextNode();
+            reactionsToCome.removeNext();
+
+            int newCompartment = model.spontaneousTarget[networkState.getState(recoveringNode)];
+
+            // Updating state in place, with the reactions of the new compartment
+            enterCompartment(recoveringNode, newCompartment, networkState, network);
+
+            // Updating reaction history
+            reactionHistory.add(reactionTime, ReactionType.Recovery, recoveringNode, recoveringNode, newCompartment);
+
+            return recoveringNode;
+        }
+    }
+}
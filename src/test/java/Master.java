@@ -1,6 +1,7 @@
 import java.io.IOException;
-import java.util.*;
-import java.util.stream.IntStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Master {
 
@@ -10,50 +11,111 @@ public class Master {
         SimParameters simParameters = new SimParameters();
         Parameters parameters = new Parameters();
 
-        // IC
-        Double simulationStartTime = 0.0;   // initial time
-        IC ic = new IC(simulationStartTime, parameters.N);
-
         // Defining network
-        NetworkBuilder networkBuilder = new NetworkBuilder();
-        networkBuilder.buildNetwork(parameters.N, parameters.p);
+        ContactNetwork network = buildNetwork(parameters, simParameters);
         try {
-            networkBuilder.printNetwork(simParameters.outputPath, networkBuilder.network);
+            new NetworkBuilder().printNetwork(simParameters.outputPath, network);
         } catch (IOException e) {
             e.printStackTrace();
         }
-        Map<Integer, List<Integer>> networkNeighbors = networkBuilder.networkNeighbors;
 
-        // Simulation setup
-        Simulation simulation = new Simulation(ic.initialState, parameters);
-        simulation.seedRNG();
+        try {
+            run(simParameters, parameters, network);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
 
-        // Opening output files
-        PrintOutput.openOutputFiles(simParameters.outputPath, parameters.N);
+    }
 
-        for (Iterator<Integer> experiment =
-             IntStream.rangeClosed(1, simParameters.numberExperiments).iterator();
-             experiment.hasNext(); ){
+    // Network of the parameters, which get its size when it comes from a file. Transmission rates
+    // then depend on its mean degree (set with setMeanDegree).
+    static ContactNetwork buildNetwork(Parameters parameters, SimParameters simParameters){
+        NetworkBuilder networkBuilder = new NetworkBuilder();
+        networkBuilder.buildNetwork(parameters, simParameters.networkSeed);
+        if ( parameters.networkType == NetworkType.EdgeListFile ) {
+            parameters.N = networkBuilder.network.size();
+        }
+        return networkBuilder.network;
+    }
+
+    // Runs the ensemble of experiments of the parameters on a network, writing to simParameters.outputPath
+    static void run(SimParameters simParameters, Parameters parameters, ContactNetwork network) throws IOException {
 
-            // Current experiment
-            Integer exp = experiment.next();
+        setTransmissionRate(parameters, network);
 
-            // list of reactions and when they occur
-            NavigableMap<Double, ReactionSpecification> reactionHistory = new TreeMap<>();
+        // Compartments and transitions
+        EpidemicModel model = EpidemicModel.create(parameters.model, parameters);
 
-            // state of network in time
-            NetworkState networkState = new NetworkState(ic.initialState.getTime(), ic.initialState.getState());
+        // IC
+        Double simulationStartTime = 0.0;   // initial time
+        IC ic = new IC(simulationStartTime, parameters, model, network,
+                RandomStream.create(simParameters.randomType, simParameters.randomSeed, 0));
 
-            // Sim setup
-            simulation.simulationSetUp(networkState, networkNeighbors, parameters);
+        // Opening output files
+        try (OutputSink output = openOutput(simParameters, parameters, ic.initialState);
+             RunMetrics metrics = RunMetrics.start(simParameters, output)) {
+
+            // Running experiments in parallel, each one on its own simulation and RNG stream
+            EnsembleRunner ensembleRunner = new EnsembleRunner(simParameters.numberThreads, simParameters.engine,
+                    simParameters.randomType, stoppingRules(simParameters), metrics, simParameters.historyMemoryBudget);
+            ensembleRunner.run(simParameters.firstExperiment, simParameters.numberExperiments, simParameters.randomSeed,
+                    ic, network, parameters, output);
+        }
+    }
 
-            // Simulation
-            simulation.reactionStepping(exp, networkState,
-                    reactionHistory, networkNeighbors, parameters);
+    // Transmission rate for the mean degree of the network, p * (N - 1) for Erdös-Renyi ones
+    static void setTransmissionRate(Parameters parameters, ContactNetwork network){
+        if ( parameters.networkType != NetworkType.ErdosRenyi ) {
+            parameters.setMeanDegree(network.meanDegree());
+        } else {
+            parameters.setMeanDegree(parameters.p * (parameters.N - 1));
+        }
+    }
 
+    static List<StoppingRule> stoppingRules(SimParameters simParameters){
+        List<StoppingRule> stoppingRules = new ArrayList<>();
+        if ( simParameters.stopAtExtinction ) {
+            stoppingRules.add(StoppingRule.extinction());
+        }
+        if ( simParameters.maxTime < Double.POSITIVE_INFINITY ) {
+            stoppingRules.add(StoppingRule.maxTime(simParameters.maxTime));
+        }
+        if ( simParameters.maxEvents < Long.MAX_VALUE ) {
+            stoppingRules.add(StoppingRule.maxEvents(simParameters.maxEvents));
         }
+        if ( simParameters.prevalenceThreshold < Double.POSITIVE_INFINITY ) {
+            stoppingRules.add(StoppingRule.prevalence(simParameters.prevalenceThreshold));
+        }
+        if ( simParameters.minorOutbreakEvents > 0 ) {
+            stoppingRules.add(StoppingRule.minorOutbreak(simParameters.minorOutbreakEvents, simParameters.minorOutbreakSize));
+        }
+        if ( simParameters.wallClockBudget < Double.POSITIVE_INFINITY ) {
+            stoppingRules.add(StoppingRule.wallClock(simParameters.wallClockBudget));
+        }
+        return stoppingRules;
+    }
 
-        PrintOutput.closeOutputFiles();
+    private static OutputSink openOutput(SimParameters simParameters, Parameters parameters, NetworkState initialState)
+            throws IOException {
+        EpidemicModel model = initialState.getModel();
+        List<OutputSink> sinks = new ArrayList<>();
+        sinks.add(new PrintOutput(simParameters.outputPath, parameters.N, model,
+                simParameters.printSummarizedDynamicState));
+
+        if ( simParameters.printEnsembleStatistics ) {
+            sinks.add(new EnsembleStatistics(simParameters.outputPath, model,
+                    initialState.getTime(), simParameters.statisticsEndTime, simParameters.statisticsTimeStep,
+                    simParameters.maxTime));
+        }
+        if ( simParameters.printBinaryEventLog ) {
+            sinks.add(new BinaryEventLog(Paths.get(simParameters.outputPath + "reactionHistory.bin"),
+                    simParameters.randomSeed, parameters, model));
+        }
+        if ( simParameters.printStateTrajectory ) {
+            sinks.add(new StateTrajectoryWriter(Paths.get(simParameters.outputPath + "stateTrajectory.bin"),
+                    parameters.N, simParameters.checkpointInterval, model));
+        }
 
+        return sinks.size() == 1 ? sinks.get(0) : new CompositeOutputSink(sinks.toArray(new OutputSink[0]));
     }
 }
@@ -0,0 +1,9 @@
+public enum ModelType {
+    SIR,    // S -> I by contact, I -> R
+
+    SEIR,   // S -> E by contact, E -> I, I -> R
+
+    SIS,    // S -> I by contact, I -> S
+
+    SIRS    // S -> I by contact, I -> R, R -> S (waning immunity)
+}
@@ -1,70 +1,43 @@
-import javafx.util.Pair;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.*;
 
 class NetworkBuilder {
-    List<Pair<Integer, Integer>> network = new ArrayList<>();
-    Map<Integer, List<Integer>> networkNeighbors = new HashMap<>();
+    static final long DEFAULT_SEED = 1234567890L;
 
+    ContactNetwork network;
 
-    void buildNetwork (int N, double p) {
-        Random random = new Random(1234567890);
-
-        // Initializing network with no contacts
-        for (int i = 1; i <= N; i++){
-            List<Integer> connectedNodes = new ArrayList<>();
-            networkNeighbors.put(i, connectedNodes);
-        }
-
-        // Filling in contacts (Erdös-Renyi network)
-        for (int i = 1; i <= N; i++){
-            for (int j = i + 1; j <= N; j++){
-                if ( random.nextFloat() <= p ) {
-                    network.add(new Pair(i, j));
-
-                    List<Integer> connectedNodes1 = networkNeighbors.get(i);
-                    connectedNodes1.add(j);
-
-                    // Symmetrizing connections
-                    List<Integer> connectedNodes2 = networkNeighbors.get(j);
-                    connectedNodes2.add(i);
-                }
-            }
-        }
-
-        // Capturing unconnected nodes and assigning them 1 connection
-        for (int i = 1; i <= N; i++) {
-            if (networkNeighbors.get(i).size() == 0) {
-                Integer j = 1 + random.nextInt(N);
 
-                List<Integer> connectedNodes1 = networkNeighbors.get(i);
-                connectedNodes1.add(j);
-
-                // Symmetrizing connections
-                List<Integer> connectedNodes2 = networkNeighbors.get(j);
-                connectedNodes2.add(i);
-
-                network.add(new Pair(i, j));
-            }
-        }
+    // Erdös-Renyi network with the default seed
+    void buildNetwork (int N, double p) {
+        network = new ErdosRenyiGenerator(N, p).generate(DEFAULT_SEED);
         // Printing network to file
 //        printNetwork(network);
     }
 
-    void printNetwork(String outputPath, List<Pair<Integer, Integer>> network) throws IOException {
+    // Network of the type set in the parameters, the same for a given seed
+    void buildNetwork (Parameters parameters, long seed) {
+        network = NetworkGenerator.create(parameters).generate(seed);
+    }
+
+    void printNetwork(String outputPath, ContactNetwork network) throws IOException {
 
         // Output file
         try (FileWriter writerNetwork =
                      new FileWriter(outputPath + "network.csv")) {
 
             writerNetwork.append("Node1, Node2 \n");
-            for (Pair linkedNodes : network) {
-
-                writerNetwork.append(String.valueOf(linkedNodes.getKey()));
-                writerNetwork.append(", ");
-                writerNetwork.append(String.valueOf(linkedNodes.getValue()));
-                writerNetwork.append("\n");
+            for (int node1 = 1; node1 <= network.size(); node1++) {
+                for (int k = network.neighborsStart(node1); k < network.neighborsEnd(node1); k++) {
+                    int node2 = network.neighbor(k);
+
+                    // Each edge is stored from both ends, printing it once
+                    if ( node1 < node2 ) {
+                        writerNetwork.append(String.valueOf(node1));
+                        writerNetwork.append(", ");
+                        writerNetwork.append(String.valueOf(node2));
+                        writerNetwork.append("\n");
+                    }
+                }
             }
             writerNetwork.close();
         }
@@ -0,0 +1,43 @@
+import java.nio.file.Paths;
+
+// Random contact network model. Generators are O(N + E), run their independent blocks of work on
+// all cores, and derive every random number from the seed and fixed block or edge indices, so a
+// seed always gives the same network whatever the number of threads.
+interface NetworkGenerator {
+    int BLOCK_SIZE = 1 << 14;       // nodes generated by one parallel task
+
+    ContactNetwork generate(long seed);
+
+    static NetworkGenerator create(Parameters parameters){
+        switch (parameters.networkType) {
+            case Configuration:
+                return new ConfigurationModelGenerator(parameters.N, parameters.cm_exponent, parameters.cm_minDegree);
+            case BarabasiAlbert:
+                return new BarabasiAlbertGenerator(parameters.N, parameters.ba_m);
+            case WattsStrogatz:
+                return new WattsStrogatzGenerator(parameters.N, parameters.ws_k, parameters.ws_rewiring);
+            case Lattice:
+                return new LatticeGenerator(parameters.N, parameters.lattice_periodic);
+            case EdgeListFile:
+                return new EdgeListLoader(Paths.get(parameters.networkFile));
+            case ErdosRenyi:
+            default:
+                return new ErdosRenyiGenerator(parameters.N, parameters.p);
+        }
+    }
+
+    // Number of parallel blocks covering N nodes
+    static int blocks(long N){
+        return (int) ((N + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    }
+
+    // Random 64 bits for an index of a seeded stream (SplitMix64), the same on every thread
+    static long hash(long seed, long index){
+        return SplitMix64.hash(seed, index);
+    }
+
+    // Uniform double in [0, 1)
+    static double uniform(long seed, long index){
+        return (hash(seed, index) >>> 11) * 0x1.0p-53;
+    }
+}
@@ -1,27 +1,89 @@
-import java.util.SortedMap;
+import java.util.Arrays;
 
 class NetworkState {
-    private Double time;
-    private SortedMap<Integer, Compartments> state;
+    private final EpidemicModel model;
+    private double time;
+    private final byte[] state;     // compartment index by node id, nodes are 1..N (index 0 unused)
+    private final long[] counts;    // number of nodes by compartment index, kept up to date on every change
 
-    NetworkState(Double time, SortedMap<Integer, Compartments> state){
+    // Everyone in the initial compartment of the model
+    NetworkState(double time, int N, EpidemicModel model){
+        this.model = model;
         this.time = time;
-        this.state = state;
+        this.state = new byte[N + 1];
+        this.counts = new long[model.numberOfCompartments()];
+
+        Arrays.fill(state, (byte) model.initialCompartment);
+        counts[model.initialCompartment] = N;
     }
 
-    void setState(SortedMap<Integer, Compartments> state) {
+    private NetworkState(EpidemicModel model, double time, byte[] state, long[] counts){
+        this.model = model;
+        this.time = time;
         this.state = state;
+        this.counts = counts;
+    }
+
+    // Independent copy of the current state, for consumers that need to keep history
+    NetworkState snapshot(){
+        return new NetworkState(model, time, state.clone(), counts.clone());
+    }
+
+    // Overwrites this state in place with the contents of another one of the same size
+    void copyFrom(NetworkState other){
+        System.arraycopy(other.state, 0, state, 0, state.length);
+        System.arraycopy(other.counts, 0, counts, 0, counts.length);
+        this.time = other.time;
+    }
+
+    // Back to other, the state this one was copied from before the reactions of history, restoring
+    // only the nodes they changed when there are few of them
+    void resetTo(NetworkState other, ReactionHistory history){
+        if ( history.size() >= state.length / 16 || history.spilledReactions() > 0 ) {
+            copyFrom(other);
+            return;
+        }
+        ReactionHistory.Chunks reactions = history.chunks();
+        while ( reactions.next() ) {
+            for (int reaction = 0; reaction < reactions.size(); reaction++) {
+                int node = reactions.node(reaction);
+                state[node] = other.state[node];
+            }
+        }
+        System.arraycopy(other.counts, 0, counts, 0, counts.length);
+        this.time = other.time;
     }
 
-    void setTime(Double time) {
+    void setState(int node, int compartment) {
+        counts[state[node]]--;
+        state[node] = (byte) compartment;
+        counts[compartment]++;
+    }
+
+    void setTime(double time) {
         this.time = time;
     }
 
-    Double getTime() {
+    double getTime() {
         return time;
     }
 
-    SortedMap<Integer, Compartments> getState() {
-        return state;
+    // Compartment index of a node
+    int getState(int node) {
+        return state[node];
+    }
+
+    // Number of nodes currently in a compartment, O(1)
+    long getCount(int compartment) {
+        return counts[compartment];
+    }
+
+    EpidemicModel getModel() {
+        return model;
+    }
+
+    // Number of nodes in the network
+    int size() {
+        return state.length - 1;
     }
 }
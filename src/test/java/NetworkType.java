@@ -0,0 +1,13 @@
+public enum NetworkType {
+    ErdosRenyi,         // link probability p between every pair of nodes
+
+    Configuration,      // power-law degree sequence, stubs matched at random (erased configuration model)
+
+    BarabasiAlbert,     // preferential attachment, m links per node
+
+    WattsStrogatz,      // ring of k nearest neighbors, every link rewired with some probability
+
+    Lattice,            // 2-D square lattice, 4 neighbors per node
+
+    EdgeListFile        // empirical network loaded from an edge list file, N is set from the file
+}
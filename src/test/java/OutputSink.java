@@ -0,0 +1,65 @@
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+// Destination of everything a simulation reports. Implementations are shared by concurrently
+// running experiments and must be thread safe; every record carries its experiment number.
+interface OutputSink extends AutoCloseable {
+
+    // Full state of every node, after every reaction
+    void printNetworkState(int experiment, NetworkState networkState);
+
+    // Single node that changed compartment in a reaction, networkState is the state after it
+    default void printStateChange(int experiment, NetworkState networkState, int node){
+    }
+
+    // Numbers of nodes by compartment, after every reaction
+    void printSummarizedNetworkState(int experiment, NetworkState networkState);
+
+    // Initial state of an experiment that has ended, before its reactions
+    default void startReactions(int experiment, NetworkState initialState, long numberOfReactions){
+    }
+
+    // Next reactions of the experiment, in time order
+    default void printReactions(int experiment, ReactionHistory.Chunks reactions){
+    }
+
+    // Always called after startReactions, also when the pass failed, to release what it holds
+    default void endReactions(int experiment){
+    }
+
+    // Initial state and reactions of an experiment that has ended, in a single pass over its history
+    // (CompositeOutputSink feeds every sink from the same pass)
+    default void printReactions(int experiment, NetworkState initialState, ReactionHistory reactionHistory){
+        try {
+            startReactions(experiment, initialState, reactionHistory.size());
+            ReactionHistory.Chunks reactions = reactionHistory.chunks();
+            while ( reactions.next() ) {
+                printReactions(experiment, reactions);
+            }
+        } finally {
+            endReactions(experiment);
+        }
+    }
+
+    // Why an experiment ended: the name of the stopping rule that fired, or SimulationEngine.NO_REACTIONS_TO_COME
+    default void printStoppingRule(int experiment, NetworkState finalState, long numberOfEvents, String stoppedBy){
+    }
+
+    // Called once an experiment has reported everything
+    default void endExperiment(int experiment){
+    }
+
+    // Bytes written to disk so far by file name, and the time spent writing them (see RunMetrics)
+    default Map<String, Long> bytesWritten(){
+        return Collections.emptyMap();
+    }
+
+    default long writeNanos(){
+        return 0;
+    }
+
+    // Flushes everything still buffered and releases the files
+    @Override
+    void close() throws IOException;
+}
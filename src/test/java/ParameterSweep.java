@@ -0,0 +1,222 @@
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+// Runs a grid of parameter points in one JVM, so that JIT warmup is paid once for the whole sweep
+// instead of once per point. Parameters come from an optional properties file and name=value
+// arguments (which override the file), the names being those of the Parameters and SimParameters
+// fields. The grid axes take comma separated lists:
+//
+//   N, p, R0, recov_scale, recov_shape, experiments (numberExperiments)
+//
+// every other name takes a single value, e.g.
+//
+//   java ParameterSweep config=sweep.properties N=1000,10000 R0=1.5,2,2.5 model=SEIR outputPath=out/
+//
+// or through Maven: mvn -B -Psweep verify -Dsweep.args="config=sweep.properties".
+// Points run in grid order with N and p outermost, and the network is only built when they change:
+// points sharing N and p run on the same network (see Parameters.setMeanDegree for beta). Every
+// point writes its output to its own directory, outputPath/pointNNNN/, with a manifest.properties
+// holding every parameter of the point (a valid config to rerun it alone) and its timings. The
+// points are also listed in outputPath/sweep.csv.
+class ParameterSweep {
+    private static final String[] AXES = {"N", "p", "R0", "recov_scale", "recov_shape", "numberExperiments"};
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if ( option.length != 2 ) {
+                throw new IllegalArgumentException("Expected name=value, got " + arg);
+            }
+            if ( option[0].equals("config") ) {
+                options.putAll(readConfig(Paths.get(option[1])));
+            } else {
+                options.put(option[0], option[1]);
+            }
+        }
+        if ( options.containsKey("experiments") ) {
+            options.put("numberExperiments", options.remove("experiments"));
+        }
+
+        // Grid axes, the defaults of Parameters and SimParameters when not given
+        Parameters defaults = new Parameters();
+        SimParameters simDefaults = new SimParameters();
+        String[][] axes = new String[AXES.length][];
+        for (int axis = 0; axis < AXES.length; axis++) {
+            String values = options.remove(AXES[axis]);
+            if ( values == null ) {
+                values = String.valueOf(get(AXES[axis].equals("numberExperiments") ? simDefaults : defaults, AXES[axis]));
+            }
+            axes[axis] = Arrays.stream(values.split(",")).map(String::trim).toArray(String[]::new);
+        }
+
+        Path outputPath = Paths.get(options.getOrDefault("outputPath", simDefaults.outputPath));
+        Files.createDirectories(outputPath);
+
+        try (PrintWriter sweep = new PrintWriter(Files.newBufferedWriter(outputPath.resolve("sweep.csv")))) {
+            sweep.println("point, directory, N, p, R0, recov_scale, recov_shape, experiments, networkSeconds, seconds");
+
+            int point = 0;
+            int[] index = new int[AXES.length];
+            ContactNetwork network = null;
+            String networkKey = null;
+            do {
+                point++;
+
+                // Parameters of the point: scalars first, then the values of the axes
+                Parameters parameters = new Parameters();
+                SimParameters simParameters = new SimParameters();
+                for (Map.Entry<String, String> option : options.entrySet()) {
+                    set(parameters, simParameters, option.getKey(), option.getValue());
+                }
+                for (int axis = 0; axis < AXES.length; axis++) {
+                    set(parameters, simParameters, AXES[axis], axes[axis][index[axis]]);
+                }
+                String directory = String.format("point%04d", point);
+                Path pointPath = outputPath.resolve(directory);
+                Files.createDirectories(pointPath);
+                simParameters.outputPath = pointPath.toAbsolutePath() + "/";
+
+                // Network, rebuilt when N or p change
+                long start = System.nanoTime();
+                String key = axes[0][index[0]] + ", " + axes[1][index[1]];
+                if ( !key.equals(networkKey) ) {
+                    network = null;     // the previous network can be collected while the next one is built
+                    network = Master.buildNetwork(parameters, simParameters);
+                    networkKey = key;
+                } else if ( parameters.networkType == NetworkType.EdgeListFile ) {
+                    parameters.N = network.size();
+                }
+                double networkSeconds = (System.nanoTime() - start) / 1e9;
+
+                Master.run(simParameters, parameters, network);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                writeManifest(pointPath.resolve("manifest.properties"), parameters, simParameters, network,
+                        networkSeconds, seconds);
+                sweep.println(point + ", " + directory + ", " + parameters.N + ", " + parameters.p + ", "
+                        + parameters.R0 + ", " + parameters.recov_scale + ", " + parameters.recov_shape + ", "
+                        + simParameters.numberExperiments + ", " + networkSeconds + ", " + seconds);
+                sweep.flush();
+                System.out.printf("%s N=%d p=%s R0=%s recov_scale=%s recov_shape=%s experiments=%d: %.2f s%n",
+                        directory, parameters.N, parameters.p, parameters.R0, parameters.recov_scale,
+                        parameters.recov_shape, simParameters.numberExperiments, seconds);
+            } while ( next(index, axes) );
+        }
+    }
+
+    // Advances the grid index, last axis fastest, false once every point has been visited
+    private static boolean next(int[] index, String[][] axes){
+        for (int axis = index.length - 1; axis >= 0; axis--) {
+            if ( ++index[axis] < axes[axis].length ) {
+                return true;
+            }
+            index[axis] = 0;
+        }
+        return false;
+    }
+
+    static Map<String, String> readConfig(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader(path.toFile())) {
+            properties.load(reader);
+        }
+        Map<String, String> config = new LinkedHashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            config.put(name, properties.getProperty(name).trim());
+        }
+        return config;
+    }
+
+    // Every parameter of the point, in the properties format read by readConfig
+    private static void writeManifest(Path path, Parameters parameters, SimParameters simParameters,
+                                      ContactNetwork network, double networkSeconds, double seconds)
+            throws IOException {
+        try (PrintWriter manifest = new PrintWriter(Files.newBufferedWriter(path))) {
+            manifest.println("# Parameters");
+            for (Field field : fields(Parameters.class)) {
+                manifest.println(field.getName() + "=" + get(parameters, field.getName()));
+            }
+            manifest.println("# SimParameters");
+            for (Field field : fields(SimParameters.class)) {
+                if ( !field.getName().equals("outputPath") ) {
+                    manifest.println(field.getName() + "=" + get(simParameters, field.getName()));
+                }
+            }
+            manifest.println("# Network and timings of the run");
+            manifest.println("# edges=" + network.numberOfEdges());
+            manifest.println("# meanDegree=" + network.meanDegree());
+            manifest.println("# networkSeconds=" + networkSeconds);
+            manifest.println("# seconds=" + seconds);
+        }
+    }
+
+    // Parameter fields, the ones a config can set
+    private static List<Field> fields(Class<?> type){
+        List<Field> fields = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            if ( !Modifier.isStatic(field.getModifiers()) && !field.isSynthetic() && parses(field.getType()) ) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    private static boolean parses(Class<?> type){
+        return type == Integer.class || type == Long.class || type == Double.class || type == Boolean.class
+                || type == String.class || type.isEnum();
+    }
+
+    static void set(Parameters parameters, SimParameters simParameters, String name, String value){
+        for (Object target : new Object[]{parameters, simParameters}) {
+            for (Field field : fields(target.getClass())) {
+                if ( field.getName().equals(name) ) {
+                    try {
+                        field.set(target, parse(field.getType(), value));
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown parameter " + name);
+    }
+
+    private static Object get(Object target, String name){
+        try {
+            return target.getClass().getDeclaredField(name).get(target);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object parse(Class<?> type, String value){
+        if ( type == Integer.class ) {
+            return Integer.valueOf(value);
+        } else if ( type == Long.class ) {
+            return Long.valueOf(value);
+        } else if ( type == Double.class ) {
+            return Double.valueOf(value);
+        } else if ( type == Boolean.class ) {
+            return Boolean.valueOf(value);
+        } else if ( type.isEnum() ) {
+            return Enum.valueOf((Class<? extends Enum>) type, value);
+        }
+        return value;
+    }
+}
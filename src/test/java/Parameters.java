@@ -3,8 +3,40 @@ class Parameters {
     Double p = 1.0;
 //    Double p = 5.0 * 1 / (N - 1);      // Prob of link between 2 given nodes in Erdös-Renyi network
                                             // mean nbr of connections: (N-1) * p
+    NetworkType networkType = NetworkType.ErdosRenyi;   // other networks ignore p, see NetworkGenerator
+    Double cm_exponent = 2.5;                 // Configuration model: power-law degree exponent
+    Integer cm_minDegree = 3;                 // Configuration model: minimum degree
+    Integer ba_m = 3;                         // Barabási-Albert: links added with every node
+    Integer ws_k = 6;                         // Watts-Strogatz: nearest neighbors on the ring (even)
+    Double ws_rewiring = 0.1;                 // Watts-Strogatz: probability to rewire a link
+    Boolean lattice_periodic = true;          // Lattice: wrap around the borders
+    String networkFile = "";                  // EdgeListFile: edge list, see EdgeListLoader
     Double R0 = 2.5;                    // Basic Rep Number
     Double recov_scale = 5.0;                 // Recovery gamma dist scale
     Double recov_shape = 1.0;                 // Recovery gamma dist shape
-    Double beta = R0 * recov_shape / recov_scale / (p * (N - 1));    // Transmission rate per S contact
+    Double latent_period = 3.0;               // Mean of the exponential E period (SEIR)
+    Double immunity_period = 50.0;            // Mean of the exponential R period (SIRS)
+    ModelType model = ModelType.SIR;
+    Integer initialInfected = 20;             // IC: nodes in the seed compartment (I) at the start
+    SeedingType seeding = SeedingType.Uniform;    // IC: how these nodes are picked
+    Boolean reseedEachExperiment = false;     // IC: new seed nodes for every experiment, from its own RNG stream
+    Double parallelWindow = 0.0;              // DeltaStepping: time window settled in parallel, 0 for a quarter of the mean time between contacts of a node
+    Double beta = R0 / (recov_shape * recov_scale) / (p * (N - 1));    // Transmission rate per S contact, mean infectious period is shape * scale
+
+    Parameters(){
+    }
+
+    Parameters(Integer N, Double p, Double R0, Double recov_scale, Double recov_shape){
+        this.N = N;
+        this.p = p;
+        this.R0 = R0;
+        this.recov_scale = recov_scale;
+        this.recov_shape = recov_shape;
+        this.beta = R0 / (recov_shape * recov_scale) / (p * (N - 1));
+    }
+
+    // Transmission rate for a network of given mean degree, instead of the Erdös-Renyi one p * (N - 1)
+    void setMeanDegree(double meanDegree){
+        this.beta = R0 / (recov_shape * recov_scale) / meanDegree;
+    }
 }
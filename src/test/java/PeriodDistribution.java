@@ -0,0 +1,18 @@
+// Distribution of the time a node spends in a compartment before a spontaneous transition,
+// e.g. the infectious period. Sampling must not allocate: it runs once per infection.
+interface PeriodDistribution {
+
+    double sample(RandomStream random);
+
+    double mean();
+
+    // Infectious period of the model: gamma with shape recov_shape and scale recov_scale
+    // (exponential, mean recov_scale, when the shape is 1)
+    static PeriodDistribution infectiousPeriod(Parameters parameters){
+        if ( parameters.recov_shape == 1.0 ) {
+            return new ExponentialPeriod(parameters.recov_scale);
+        } else {
+            return new GammaPeriod(parameters.recov_shape, parameters.recov_scale);
+        }
+    }
+}
@@ -1,191 +1,191 @@
-import javafx.util.Pair;
-
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Iterator;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
-
-public class PrintOutput {
-
-    static private FileWriter writerSummarizedNetworkState;
-    static private FileWriter writerNetworkState;
-    static private FileWriter writerNetworkStateMinimal;
-    static private FileWriter writerReactionHistory;
-    static void openOutputFiles(String outputPath, Integer networkSize) {
-        try {
-            //------------- Summarized Dynamic State
-            writerSummarizedNetworkState =
-                    new FileWriter(outputPath + "summarizedDynamicState.csv");
-
-            // File headers
-            writerSummarizedNetworkState.append("iter, t, ");
-            for (Compartments compartments : Compartments.values()) {
-                writerSummarizedNetworkState.append(String.valueOf(compartments));
-
-                if ( compartments == Compartments.values()[Compartments.values().length-1] ) {
-                    writerSummarizedNetworkState.append("\n");
-                } else {
-                    writerSummarizedNetworkState.append(", ");
-                }
-            }
+import java.util.concurrent.ConcurrentHashMap;
+
+// CSV output sink. Every worker thread encodes its rows into its own byte buffers, which are
+// written to disk in large batches by the dedicated thread of an AsyncFileWriter.
+public class PrintOutput implements OutputSink {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int QUEUE_CAPACITY = 64;
+
+    private static final int SUMMARIZED_NETWORK_STATE = 0;
+    private static final int NETWORK_STATE = 1;
+    private static final int NETWORK_STATE_MINIMAL = 2;
+    private static final int REACTION_HISTORY = 3;
+    private static final int STOPPING_RULES = 4;
+
+    private static final byte[] SEPARATOR = ByteEncoder.ascii(", ");
+    private static final byte[][] REACTION_NAMES = new byte[ReactionType.values().length][];
+    static {
+        for (ReactionType reactionType : ReactionType.values()) {
+            REACTION_NAMES[reactionType.ordinal()] = ByteEncoder.ascii(reactionType.toString());
+        }
+    }
 
-            //------------- Detailed Dynamic State
-            writerNetworkState =
-                    new FileWriter(outputPath + "dynamicState.csv");
+    private final byte[][] compartmentNames;    // by compartment index of the model
+    private final Map<String, byte[]> stoppingRuleNames = new ConcurrentHashMap<>();
+    private final boolean printSummarizedNetworkState;
+    private final AsyncFileWriter writer = new AsyncFileWriter(BUFFER_SIZE, QUEUE_CAPACITY);
+    private final FileChannel[] files = new FileChannel[5];
+    private final List<ByteEncoder[]> allEncoders = new ArrayList<>();
+    private final ThreadLocal<ByteEncoder[]> encoders = ThreadLocal.withInitial(this::newEncoders);
 
-            // File headers
-            writerNetworkState.append("iter, t, ");
-            for (Integer node = 1; node <= networkSize; node++) {
-                writerNetworkState.append(node.toString());
+    PrintOutput(String outputPath, int networkSize, EpidemicModel model) throws IOException {
+        this(outputPath, networkSize, model, true);
+    }
 
-                if ( node.equals(networkSize) ) {
-                    writerNetworkState.append("\n");
-                } else {
-                    writerNetworkState.append(", ");
-                }
-            }
+    // Summary rows can be left out when the ensemble statistics are enough (summarizedDynamicState.csv
+    // then only has its header)
+    PrintOutput(String outputPath, int networkSize, EpidemicModel model, boolean printSummarizedNetworkState)
+            throws IOException {
+        this.printSummarizedNetworkState = printSummarizedNetworkState;
+        compartmentNames = new byte[model.numberOfCompartments()][];
+        for (int compartment = 0; compartment < compartmentNames.length; compartment++) {
+            compartmentNames[compartment] = ByteEncoder.ascii(model.name(compartment));
+        }
 
-            //------------- Detailed Dynamic State Minimal
-            writerNetworkStateMinimal =
-                    new FileWriter(outputPath + "dynamicStateMinimal.csv");
+        //------------- Summarized Dynamic State
+        files[SUMMARIZED_NETWORK_STATE] = writer.open(Paths.get(outputPath + "summarizedDynamicState.csv"));
 
-            // File headers
-            writerNetworkStateMinimal.append("iter, t, node, compartment\n");
+        //------------- Detailed Dynamic State
+        files[NETWORK_STATE] = writer.open(Paths.get(outputPath + "dynamicState.csv"));
 
-            //------------- Reaction History
-            writerReactionHistory =
-                    new FileWriter(outputPath + "reactionHistory.csv");
-            // File header
-            writerReactionHistory.append("iter, t, ReactionType, ReactionNodes\n");
+        //------------- Detailed Dynamic State Minimal
+        files[NETWORK_STATE_MINIMAL] = writer.open(Paths.get(outputPath + "dynamicStateMinimal.csv"));
 
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
+        //------------- Reaction History
+        files[REACTION_HISTORY] = writer.open(Paths.get(outputPath + "reactionHistory.csv"));
+
+        //------------- Stopping Rules
+        files[STOPPING_RULES] = writer.open(Paths.get(outputPath + "stoppingRules.csv"));
+
+        // File headers
+        ByteEncoder[] headers = encoders.get();
 
-    static void closeOutputFiles(){
-        try {
-            writerSummarizedNetworkState.close();
-            writerNetworkState.close();
-            writerNetworkStateMinimal.close();
-            writerReactionHistory.close();
+        ByteEncoder out = headers[SUMMARIZED_NETWORK_STATE].append(ByteEncoder.ascii("iter, t"));
+        for (byte[] compartmentName : compartmentNames) {
+            out.append(SEPARATOR).append(compartmentName);
+        }
+        out.append('\n').flush();
 
-        } catch (IOException e) {
-            e.printStackTrace();
+        out = headers[NETWORK_STATE].append(ByteEncoder.ascii("iter, t"));
+        for (int node = 1; node <= networkSize; node++) {
+            out.append(SEPARATOR).append(node);
         }
+        out.append('\n').flush();
+
+        headers[NETWORK_STATE_MINIMAL].append(ByteEncoder.ascii("iter, t, node, compartment\n")).flush();
+
+        headers[REACTION_HISTORY].append(ByteEncoder.ascii("iter, t, ReactionType, ReactionNodes\n")).flush();
+
+        headers[STOPPING_RULES].append(ByteEncoder.ascii("iter, t, events, StoppedBy\n")).flush();
     }
 
+    private ByteEncoder[] newEncoders(){
+        ByteEncoder[] threadEncoders = new ByteEncoder[files.length];
+        for (int file = 0; file < files.length; file++) {
+            threadEncoders[file] = new ByteEncoder(writer, files[file]);
+        }
+        synchronized (allEncoders) {
+            allEncoders.add(threadEncoders);
+        }
+        return threadEncoders;
+    }
 
-    void printNetworkState(Integer experiment, NetworkState networkState){
-        // Output file
-        try  {
-            // Writing to file
-            writerNetworkState.append(experiment.toString());
-            writerNetworkState.append(", ");
-            writerNetworkState.append(String.valueOf(networkState.getTime()));
-            writerNetworkState.append(", ");
+    // Must only be called once every experiment writing to this sink has finished
+    @Override
+    public Map<String, Long> bytesWritten(){
+        return writer.bytesWritten();
+    }
 
-            for (Iterator<Integer> it = networkState.getState().keySet().iterator(); it.hasNext(); ) {
-                writerNetworkState.append(String.valueOf(networkState.getState().get(it.next())));
+    @Override
+    public long writeNanos(){
+        return writer.writeNanos();
+    }
 
-                if ( it.hasNext() ) {
-                    writerNetworkState.append(", ");
-                } else {
-                    writerNetworkState.append("\n");
+    @Override
+    public void close() throws IOException {
+        synchronized (allEncoders) {
+            for (ByteEncoder[] threadEncoders : allEncoders) {
+                for (ByteEncoder encoder : threadEncoders) {
+                    encoder.flush();
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
+        writer.close();
     }
 
-    void printSummarizedNetworkState(Integer experiment,
-                                             Pair<Double, Map<Compartments, Long>> summarizedNetworkState) {
-
-        // Counting number of nodes in each compartment
-//        Map<Compartments, Long> numbersByCompartment = numberOfNodesByCompartment(networkState);
-//        Arrays.stream(Compartments.values())
-//                .forEach(c -> numbersByCompartment.putIfAbsent(c, (long) 0));
-
-        // Output file
-        try {
-            // Writing to file
-            writerSummarizedNetworkState.append(experiment.toString());
-            writerSummarizedNetworkState.append(", ");
-            writerSummarizedNetworkState.append(String.valueOf(summarizedNetworkState.getKey()));
-            writerSummarizedNetworkState.append(", ");
-
-            for ( Compartments compartments : Compartments.values() ){
-                writerSummarizedNetworkState.append(String.valueOf(summarizedNetworkState.getValue().get(compartments)));
-
-                if ( compartments == Compartments.values()[Compartments.values().length-1] ) {
-                    writerSummarizedNetworkState.append("\n");
-                } else {
-                    writerSummarizedNetworkState.append(", ");
-                }
-            }
+    @Override
+    public void printNetworkState(int experiment, NetworkState networkState){
+        ByteEncoder out = encoders.get()[NETWORK_STATE];
 
-        } catch (IOException e) {
-            e.printStackTrace();
+        out.append(experiment).append(SEPARATOR).append(networkState.getTime());
+        for (int node = 1; node <= networkState.size(); node++) {
+            out.append(SEPARATOR).append(compartmentNames[networkState.getState(node)]);
         }
+        out.append('\n').endRecord();
     }
 
-    void printNetworkStateMinimal(Integer experiment,
-                                  NetworkState initialState,
-                                  NavigableMap<Double, ReactionSpecification> reactionHistory){
-        // Output file
-        try {
-            // Initial state
-            for (Map.Entry<Integer, Compartments> nodeState : initialState.getState().entrySet()) {
-                writerNetworkStateMinimal.append(experiment.toString());
-                writerNetworkStateMinimal.append(", ");
-                writerNetworkStateMinimal.append(initialState.getTime().toString());
-                writerNetworkStateMinimal.append(", ");
-                writerNetworkStateMinimal.append(nodeState.getKey().toString());
-                writerNetworkStateMinimal.append(", ");
-                writerNetworkStateMinimal.append(nodeState.getValue().toString());
-                writerNetworkStateMinimal.append("\n");
-            }
+    @Override
+    public void printSummarizedNetworkState(int experiment, NetworkState networkState) {
+        if ( !printSummarizedNetworkState ) {
+            return;
+        }
+        ByteEncoder out = encoders.get()[SUMMARIZED_NETWORK_STATE];
 
-            // Writing to file
-            for (Map.Entry<Double, ReactionSpecification> entry : reactionHistory.entrySet()) {
-                writerNetworkStateMinimal.append(experiment.toString());
-                writerNetworkStateMinimal.append(", ");
-                writerNetworkStateMinimal.append(entry.getKey().toString());
-                writerNetworkStateMinimal.append(", ");
-                if (entry.getValue().reactionType == ReactionType.Infection) {
-                    writerNetworkStateMinimal.append(entry.getValue().reactionNodes.get(1).toString());
-                    writerNetworkStateMinimal.append(", ");
-                    writerNetworkStateMinimal.append(Compartments.I.toString());
-                } else if (entry.getValue().reactionType == ReactionType.Recovery) {
-                    writerNetworkStateMinimal.append(entry.getValue().reactionNodes.get(0).toString());
-                    writerNetworkStateMinimal.append(", ");
-                    writerNetworkStateMinimal.append(Compartments.R.toString());
-                }
-                writerNetworkStateMinimal.append("\n");
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+        // Numbers by compartment are read from the state counters
+        out.append(experiment).append(SEPARATOR).append(networkState.getTime());
+        for ( int compartment = 0; compartment < compartmentNames.length; compartment++ ){
+            out.append(SEPARATOR).append(networkState.getCount(compartment));
+        }
+        out.append('\n').endRecord();
+    }
+
+    // Initial state rows of dynamicStateMinimal.csv
+    @Override
+    public void startReactions(int experiment, NetworkState initialState, long numberOfReactions){
+        ByteEncoder out = encoders.get()[NETWORK_STATE_MINIMAL];
+        for (int node = 1; node <= initialState.size(); node++) {
+            out.append(experiment).append(SEPARATOR).append(initialState.getTime()).append(SEPARATOR)
+                    .append(node).append(SEPARATOR)
+                    .append(compartmentNames[initialState.getState(node)])
+                    .append('\n').endRecord();
         }
     }
 
-    void printReactionHistory(Integer experiment, Map<Double, ReactionSpecification> reactionHistory){
-        // Output file
-        try {
-            // Writing to file
-            for (Map.Entry<Double, ReactionSpecification> entry : reactionHistory.entrySet()) {
-                writerReactionHistory.append(experiment.toString());
-                writerReactionHistory.append(", ");
-                writerReactionHistory.append(entry.getKey().toString());
-                writerReactionHistory.append(", ");
-                writerReactionHistory.append(entry.getValue().reactionType.toString());
-                writerReactionHistory.append(", ");
-                writerReactionHistory.append(entry.getValue().reactionNodes.toString().replace(",", ""));
-                writerReactionHistory.append("\n");
+    // A row of dynamicStateMinimal.csv (node changing compartment) and one of reactionHistory.csv by reaction
+    @Override
+    public void printReactions(int experiment, ReactionHistory.Chunks reactions){
+        ByteEncoder minimal = encoders.get()[NETWORK_STATE_MINIMAL];
+        ByteEncoder history = encoders.get()[REACTION_HISTORY];
+
+        for (int reaction = 0; reaction < reactions.size(); reaction++) {
+            minimal.append(experiment).append(SEPARATOR).append(reactions.time(reaction)).append(SEPARATOR)
+                    .append(reactions.node(reaction)).append(SEPARATOR)
+                    .append(compartmentNames[reactions.compartment(reaction)])
+                    .append('\n').endRecord();
+
+            // Reaction nodes as [source target] or [node]
+            ReactionType reactionType = reactions.type(reaction);
+            history.append(experiment).append(SEPARATOR).append(reactions.time(reaction)).append(SEPARATOR)
+                    .append(REACTION_NAMES[reactionType.ordinal()]).append(SEPARATOR);
+            history.append('[');
+            if ( reactionType == ReactionType.Infection ) {
+                history.append(reactions.source(reaction)).append(' ');
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            history.append(reactions.node(reaction)).append(']').append('\n').endRecord();
         }
     }
+
+    @Override
+    public void printStoppingRule(int experiment, NetworkState finalState, long numberOfEvents, String stoppedBy){
+        encoders.get()[STOPPING_RULES]
+                .append(experiment).append(SEPARATOR).append(finalState.getTime()).append(SEPARATOR)
+                .append(numberOfEvents).append(SEPARATOR).append(stoppingRuleNames.computeIfAbsent(stoppedBy, ByteEncoder::ascii))
+                .append('\n').endRecord();
+    }
 }
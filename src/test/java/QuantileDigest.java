@@ -0,0 +1,186 @@
+import java.util.Arrays;
+
+// Approximate quantiles of a stream of values (merging t-digest, Dunning 2019). Values are
+// buffered and periodically merged into weighted centroids. A centroid at quantile q may hold up
+// to 4 * n * q * (1 - q) / compression values, so the tails are kept at a finer resolution than
+// the median and memory stays O(compression) whatever the number of values. Digests filled on
+// different threads can be merged, giving the digest of the combined stream.
+class QuantileDigest {
+    private final double compression;
+
+    private double[] means;         // centroids, sorted by mean after compress()
+    private double[] weights;
+    private int numberOfCentroids = 0;
+
+    private double[] bufferMeans;   // values and centroids of merged digests waiting to be compressed
+    private double[] bufferWeights;
+    private int buffered = 0;
+
+    private double totalWeight = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    QuantileDigest(double compression){
+        this.compression = compression;
+        int capacity = (int) Math.ceil(2 * compression) + 10;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.bufferMeans = new double[capacity];
+        this.bufferWeights = new double[capacity];
+    }
+
+    void add(double value){
+        add(value, 1);
+    }
+
+    // Adds the values of another digest
+    void merge(QuantileDigest other){
+        other.compress();
+        for (int centroid = 0; centroid < other.numberOfCentroids; centroid++) {
+            add(other.means[centroid], other.weights[centroid]);
+        }
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    long size(){
+        return Math.round(totalWeight + bufferedWeight());
+    }
+
+    // Estimated value at quantile q in [0, 1], NaN if the digest is empty
+    double quantile(double q){
+        compress();
+        if ( numberOfCentroids == 0 ) {
+            return Double.NaN;
+        }
+        if ( numberOfCentroids == 1 ) {
+            return means[0];
+        }
+
+        // Interpolating between the centers of the centroids around rank q * n, a centroid of
+        // weight w covering ranks [before, before + w)
+        double rank = q * totalWeight;
+        double before = 0;
+        for (int centroid = 0; centroid < numberOfCentroids; centroid++) {
+            double center = before + weights[centroid] / 2;
+            if ( rank < center ) {
+                if ( centroid == 0 ) {
+                    return min + (means[0] - min) * Math.max(0, rank) / center;
+                }
+                double previousCenter = before - weights[centroid - 1] / 2;
+                return means[centroid - 1] + (means[centroid] - means[centroid - 1])
+                        * (rank - previousCenter) / (center - previousCenter);
+            }
+            before += weights[centroid];
+        }
+        double lastCenter = totalWeight - weights[numberOfCentroids - 1] / 2;
+        return means[numberOfCentroids - 1] + (max - means[numberOfCentroids - 1])
+                * Math.min(1, (rank - lastCenter) / (totalWeight - lastCenter));
+    }
+
+    private void add(double value, double weight){
+        if ( buffered == bufferMeans.length ) {
+            compress();
+        }
+        bufferMeans[buffered] = value;
+        bufferWeights[buffered] = weight;
+        buffered++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    private double bufferedWeight(){
+        double weight = 0;
+        for (int i = 0; i < buffered; i++) {
+            weight += bufferWeights[i];
+        }
+        return weight;
+    }
+
+    // Merges the buffer into the centroids
+    private void compress(){
+        if ( buffered == 0 ) {
+            return;
+        }
+
+        // Everything to merge, sorted by mean
+        int count = numberOfCentroids + buffered;
+        double[] allMeans = new double[count];
+        double[] allWeights = new double[count];
+        System.arraycopy(means, 0, allMeans, 0, numberOfCentroids);
+        System.arraycopy(weights, 0, allWeights, 0, numberOfCentroids);
+        System.arraycopy(bufferMeans, 0, allMeans, numberOfCentroids, buffered);
+        System.arraycopy(bufferWeights, 0, allWeights, numberOfCentroids, buffered);
+        sort(allMeans, allWeights, 0, count - 1);
+
+        totalWeight += bufferedWeight();
+        buffered = 0;
+
+        // Greedy pass: a centroid absorbs the next one while it stays under the size bound at both ends
+        numberOfCentroids = 0;
+        double mean = allMeans[0];
+        double weight = allWeights[0];
+        double weightBefore = 0;
+        for (int i = 1; i < count; i++) {
+            double proposed = weight + allWeights[i];
+            double q0 = weightBefore / totalWeight;
+            double q2 = (weightBefore + proposed) / totalWeight;
+            double limit = 4 * totalWeight * Math.min(q0 * (1 - q0), q2 * (1 - q2)) / compression;
+            if ( proposed <= limit ) {
+                mean += (allMeans[i] - mean) * allWeights[i] / proposed;
+                weight = proposed;
+            } else {
+                appendCentroid(mean, weight);
+                weightBefore += weight;
+                mean = allMeans[i];
+                weight = allWeights[i];
+            }
+        }
+        appendCentroid(mean, weight);
+    }
+
+    private void appendCentroid(double mean, double weight){
+        if ( numberOfCentroids == means.length ) {
+            means = Arrays.copyOf(means, 2 * numberOfCentroids);
+            weights = Arrays.copyOf(weights, 2 * numberOfCentroids);
+        }
+        means[numberOfCentroids] = mean;
+        weights[numberOfCentroids] = weight;
+        numberOfCentroids++;
+    }
+
+    // Sorts both arrays by key, quicksort on the primitive arrays to avoid boxing
+    private static void sort(double[] keys, double[] values, int low, int high){
+        while ( low < high ) {
+            double pivot = keys[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while ( i <= j ) {
+                while ( keys[i] < pivot ) {
+                    i++;
+                }
+                while ( keys[j] > pivot ) {
+                    j--;
+                }
+                if ( i <= j ) {
+                    double key = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = key;
+                    double value = values[i];
+                    values[i] = values[j];
+                    values[j] = value;
+                    i++;
+                    j--;
+                }
+            }
+            // Recursing on the smaller side keeps the stack O(log n)
+            if ( j - low < high - i ) {
+                sort(keys, values, low, j);
+                low = i;
+            } else {
+                sort(keys, values, i, high);
+                high = j;
+            }
+        }
+    }
+}
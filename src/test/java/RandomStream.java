@@ -0,0 +1,51 @@
+import java.util.random.RandomGenerator;
+
+// Pseudo-random stream owned by a single thread, so not synchronized. Stream i of a seed is computed
+// from the seed and i alone (never by splitting or skipping the streams before it), so experiment k,
+// which runs on stream k of the master seed, draws the same numbers whether it runs alone, first or
+// last, on any number of threads. Variates are drawn from nextLong: uniform ones here, from its
+// top bits and without division, other ones by java.util.random.RandomGenerator, whose
+// nextExponential and nextGaussian are McFarland's modified ziggurats, about 4x faster than
+// -log(1 - U) and the polar method.
+abstract class RandomStream implements RandomGenerator {
+
+    // Stream of an index of a seed, e.g. experiment k of the master seed
+    static RandomStream create(RandomType type, long seed, long index){
+        long streamSeed = SplitMix64.hash(seed, index);
+        switch (type) {
+            case SplitMix64:
+                return new SplitMix64(streamSeed);
+            case Xoshiro256StarStar:
+            default:
+                return new Xoshiro256StarStar(streamSeed);
+        }
+    }
+
+    // Uniform in [0, 1)
+    @Override
+    public final double nextDouble(){
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public final float nextFloat(){
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    // Uniform in [0, bound), Lemire's multiply and reject method (2019): the top 32 bits of a draw
+    // times bound, redrawn in the rare case where the low half falls in the biased range
+    @Override
+    public final int nextInt(int bound){
+        if ( bound <= 0 ) {
+            throw new IllegalArgumentException("Bound must be positive, got " + bound);
+        }
+        long product = (nextLong() >>> 32) * bound;
+        if ( Integer.compareUnsigned((int) product, bound) < 0 ) {
+            int threshold = Integer.remainderUnsigned(-bound, bound);
+            while ( Integer.compareUnsigned((int) product, threshold) < 0 ) {
+                product = (nextLong() >>> 32) * bound;
+            }
+        }
+        return (int) (product >>> 32);
+    }
+}
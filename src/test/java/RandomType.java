@@ -0,0 +1,5 @@
+public enum RandomType {
+    Xoshiro256StarStar, // Xoshiro256StarStar: 256 bits of state, period 2^256 - 1
+
+    SplitMix64          // SplitMix64: 64 bits of state, period 2^64, the generator of java.util.SplittableRandom
+}
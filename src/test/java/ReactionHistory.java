@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Reactions of one experiment in the order they happen, kept in primitive columns instead of one
+// object per reaction. A history is owned by a single thread and reused from one experiment to the
+// next: clear() is O(1) and the columns only grow (by doubling) past the largest experiment so far,
+// so steady-state experiments append without allocating. Reaction i moved node(i) to compartment(i);
+// for a contact source(i) is the infectious neighbor, for a spontaneous transition it is node(i).
+//
+// With a memory budget the columns stop growing once they would take more than it: when they are
+// full, their reactions are appended to a temporary file (in java.io.tmpdir, deleted by close()) and
+// the columns start over. Reactions are read back in order by chunks, spilled ones first.
+class ReactionHistory {
+    private static final ReactionType[] REACTION_TYPES = ReactionType.values();
+    static final int REACTION_SIZE = 18;    // bytes of a reaction, in the columns and in the spill file
+    private static final int CHUNK_SIZE = 1 << 12;     // reactions read back from the spill file at once
+
+    private double[] times;
+    private byte[] types;           // ReactionType ordinals
+    private int[] sources;
+    private int[] nodes;
+    private byte[] compartments;
+    private int size = 0;           // reactions in the columns
+
+    private final int maxCapacity;  // of the columns, from the memory budget
+    private FileChannel spillFile;
+    private ByteBuffer spillBuffer;
+    private long spilled = 0;       // reactions in the spill file, before the ones of the columns
+    private double[] spilledTimes;  // columns of a chunk read back from the spill file
+    private byte[] spilledTypes;
+    private int[] spilledSources;
+    private int[] spilledNodes;
+    private byte[] spilledCompartments;
+    private final Chunks chunks = new Chunks();
+
+    ReactionHistory(int expectedReactions){
+        this(expectedReactions, 0);
+    }
+
+    // Columns of at most memoryBudget bytes, no limit when it is 0
+    ReactionHistory(int expectedReactions, long memoryBudget){
+        this.maxCapacity = memoryBudget > 0 ? (int) Math.min(Integer.MAX_VALUE - 8, Math.max(16, memoryBudget / REACTION_SIZE))
+                : Integer.MAX_VALUE - 8;
+        int capacity = Math.min(maxCapacity, Math.max(16, expectedReactions));
+        this.times = new double[capacity];
+        this.types = new byte[capacity];
+        this.sources = new int[capacity];
+        this.nodes = new int[capacity];
+        this.compartments = new byte[capacity];
+    }
+
+    void add(double time, ReactionType reactionType, int sourceNode, int node, int compartment){
+        if ( size == times.length ) {
+            if ( times.length < maxCapacity ) {
+                grow();
+            } else {
+                spill();
+            }
+        }
+        times[size] = time;
+        types[size] = (byte) reactionType.ordinal();
+        sources[size] = sourceNode;
+        nodes[size] = node;
+        compartments[size] = (byte) compartment;
+        size++;
+    }
+
+    // Forgets every reaction, keeping the columns (and spill file) for the next experiment
+    void clear(){
+        size = 0;
+        spilled = 0;
+    }
+
+    // Number of reactions, spilled ones included
+    long size(){
+        return spilled + size;
+    }
+
+    // Reactions moved to the spill file, 0 when they all fit in the columns
+    long spilledReactions(){
+        return spilled;
+    }
+
+    // Deletes the spill file, if any. The history stays usable and opens a new one when it spills again.
+    void close(){
+        if ( spillFile != null ) {
+            try {
+                spillFile.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot delete the spilled reaction history", e);
+            } finally {
+                spillFile = null;
+                spilled = 0;
+                size = 0;
+            }
+        }
+    }
+
+    // The chunks of this history back before the first one. There is a single Chunks, reused by every
+    // pass: a pass ends when the next one starts.
+    Chunks chunks(){
+        chunks.reaction = 0;
+        return chunks;
+    }
+
+    private void grow(){
+        int capacity = (int) Math.min(maxCapacity, 2L * times.length);
+        times = Arrays.copyOf(times, capacity);
+        types = Arrays.copyOf(types, capacity);
+        sources = Arrays.copyOf(sources, capacity);
+        nodes = Arrays.copyOf(nodes, capacity);
+        compartments = Arrays.copyOf(compartments, capacity);
+    }
+
+    // Appends the columns to the spill file, little endian rows in the order of the columns
+    private void spill(){
+        try {
+            if ( spillFile == null ) {
+                Path path = Files.createTempFile("reactionHistory", ".bin");
+                spillFile = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+                spillBuffer = ByteBuffer.allocateDirect(CHUNK_SIZE * REACTION_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            long filePosition = spilled * REACTION_SIZE;
+            for (int reaction = 0; reaction < size; ) {
+                spillBuffer.clear();
+                for (; reaction < size && spillBuffer.remaining() >= REACTION_SIZE; reaction++) {
+                    spillBuffer.putDouble(times[reaction]).put(types[reaction]).putInt(sources[reaction])
+                            .putInt(nodes[reaction]).put(compartments[reaction]);
+                }
+                spillBuffer.flip();
+                while ( spillBuffer.hasRemaining() ) {
+                    filePosition += spillFile.write(spillBuffer, filePosition);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot spill the reaction history", e);
+        }
+        spilled += size;
+        size = 0;
+    }
+
+    // Reads the reactions in order, a chunk at a time and without allocating: next() moves to the next
+    // chunk, whose reactions are 0 .. size() - 1. Spilled reactions are read back in chunks of
+    // CHUNK_SIZE, the ones in memory make the last chunk, read in place.
+    final class Chunks {
+        private long reaction = 0;          // reactions before the current chunk and in it
+        private int chunkSize = 0;
+        private double[] chunkTimes;
+        private byte[] chunkTypes;
+        private int[] chunkSources;
+        private int[] chunkNodes;
+        private byte[] chunkCompartments;
+
+        boolean next(){
+            if ( reaction < spilled ) {
+                readSpilled();
+            } else if ( reaction < spilled + size ) {
+                chunkSize = size;
+                chunkTimes = times;
+                chunkTypes = types;
+                chunkSources = sources;
+                chunkNodes = nodes;
+                chunkCompartments = compartments;
+            } else {
+                chunkSize = 0;
+                return false;
+            }
+            reaction += chunkSize;
+            return true;
+        }
+
+        private void readSpilled(){
+            if ( spilledTimes == null ) {
+                spilledTimes = new double[CHUNK_SIZE];
+                spilledTypes = new byte[CHUNK_SIZE];
+                spilledSources = new int[CHUNK_SIZE];
+                spilledNodes = new int[CHUNK_SIZE];
+                spilledCompartments = new byte[CHUNK_SIZE];
+            }
+            chunkSize = (int) Math.min(CHUNK_SIZE, spilled - reaction);
+            spillBuffer.clear().limit(chunkSize * REACTION_SIZE);
+            long filePosition = reaction * REACTION_SIZE;
+            try {
+                while ( spillBuffer.hasRemaining() ) {
+                    int read = spillFile.read(spillBuffer, filePosition);
+                    if ( read < 0 ) {
+                        throw new IOException("Spilled reaction history truncated");
+                    }
+                    filePosition += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read the spilled reaction history", e);
+            }
+            spillBuffer.flip();
+            for (int i = 0; i < chunkSize; i++) {
+                spilledTimes[i] = spillBuffer.getDouble();
+                spilledTypes[i] = spillBuffer.get();
+                spilledSources[i] = spillBuffer.getInt();
+                spilledNodes[i] = spillBuffer.getInt();
+                spilledCompartments[i] = spillBuffer.get();
+            }
+            chunkTimes = spilledTimes;
+            chunkTypes = spilledTypes;
+            chunkSources = spilledSources;
+            chunkNodes = spilledNodes;
+            chunkCompartments = spilledCompartments;
+        }
+
+        // Reactions in the chunk
+        int size(){
+            return chunkSize;
+        }
+
+        double time(int reaction){
+            return chunkTimes[reaction];
+        }
+
+        ReactionType type(int reaction){
+            return REACTION_TYPES[chunkTypes[reaction]];
+        }
+
+        int source(int reaction){
+            return chunkSources[reaction];
+        }
+
+        // Node changing compartment in the reaction
+        int node(int reaction){
+            return chunkNodes[reaction];
+        }
+
+        // Compartment the node moves to
+        int compartment(int reaction){
+            return chunkCompartments[reaction];
+        }
+    }
+}
@@ -1,5 +1,5 @@
 public enum ReactionType {
-    Infection,
+    Infection,      // contact-driven transition, e.g. S -> I or S -> E
 
-    Recovery
+    Recovery        // spontaneous transition, e.g. I -> R, E -> I or R -> S
 }
@@ -0,0 +1,338 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+// How a run is progressing, while it runs: events processed and their rate, rejected events,
+// reactions pending in the queues, pending infections superseded by earlier ones, bytes written
+// by file, allocation and GC, and where the time goes (setting up experiments, stepping through
+// reactions, reporting them to the output sinks, writing files). Every simulation context counts
+// into its own Probe with plain fields and publishes it every PUBLISH_INTERVAL events; timings
+// are sampled on one step in SAMPLE_INTERVAL, so the overhead stays a few nanoseconds per event.
+// The metrics are read on demand, by
+//
+//   a log line every logInterval seconds on standard output,
+//   the JMX bean SIR_network:type=RunMetrics,run=<n> (see RunMetricsMBean), e.g. in JConsole,
+//   the JFR event SIR.RunMetrics, recorded every second when a recording enables it
+//     (java -XX:StartFlightRecording ... then jfr print --events SIR.RunMetrics).
+//
+// NONE, the default, counts nothing and its probes cost a field read per step.
+class RunMetrics implements RunMetricsMBean, AutoCloseable {
+    static final int PUBLISH_INTERVAL = 1 << 10;
+    static final int SAMPLE_INTERVAL = 1 << 4;
+
+    static final RunMetrics NONE = new RunMetrics(false, null);
+
+    private static final AtomicInteger RUNS = new AtomicInteger();
+
+    private final boolean enabled;
+    private final OutputSink output;
+    private final List<Probe> probes = new CopyOnWriteArrayList<>();
+    private final long startNanos = System.nanoTime();
+
+    private ScheduledExecutorService logger;
+    private ObjectName objectName;
+    private Runnable jfrHook;
+
+    // Values at the last log line, for rates over the interval
+    private long lastEvents = 0;
+    private long lastNanos = startNanos;
+
+    private RunMetrics(boolean enabled, OutputSink output){
+        this.enabled = enabled;
+        this.output = output;
+    }
+
+    // Metrics of a run writing to output, NONE when simParameters turn every view off
+    static RunMetrics start(SimParameters simParameters, OutputSink output){
+        if ( !(simParameters.metricsLogInterval > 0) && !simParameters.metricsJmx && !simParameters.metricsJfr ) {
+            return NONE;
+        }
+        RunMetrics metrics = new RunMetrics(true, output);
+        int run = RUNS.incrementAndGet();
+
+        if ( simParameters.metricsLogInterval > 0 ) {
+            long interval = (long) (simParameters.metricsLogInterval * 1e9);
+            metrics.logger = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "run-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            metrics.logger.scheduleAtFixedRate(metrics::log, interval, interval, TimeUnit.NANOSECONDS);
+        }
+        if ( simParameters.metricsJmx ) {
+            try {
+                metrics.objectName = new ObjectName("SIR_network:type=RunMetrics,run=" + run);
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        new StandardMBean(metrics, RunMetricsMBean.class), metrics.objectName);
+            } catch (JMException e) {
+                throw new IllegalStateException("Cannot register " + metrics.objectName, e);
+            }
+        }
+        if ( simParameters.metricsJfr ) {
+            metrics.jfrHook = () -> {
+                RunMetricsEvent event = new RunMetricsEvent();
+                event.run = run;
+                event.events = metrics.getEvents();
+                event.eventsPerSecond = metrics.getEventsPerSecond();
+                event.experiments = metrics.getExperiments();
+                event.queueSize = metrics.getQueueSize();
+                event.supersededInfections = metrics.getSupersededInfections();
+                event.bytesWritten = metrics.getBytesWritten();
+                event.commit();
+            };
+            FlightRecorder.addPeriodicEvent(RunMetricsEvent.class, metrics.jfrHook);
+        }
+        return metrics;
+    }
+
+    // Probe of a simulation context, to be used by a single thread
+    Probe newProbe(){
+        if ( !enabled ) {
+            return new Probe(false);
+        }
+        Probe probe = new Probe(true);
+        probes.add(probe);
+        return probe;
+    }
+
+    // Stops the views, with a last log line when logging
+    @Override
+    public void close(){
+        if ( logger != null ) {
+            logger.shutdownNow();
+            log();
+        }
+        if ( objectName != null ) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                throw new IllegalStateException("Cannot unregister " + objectName, e);
+            }
+        }
+        if ( jfrHook != null ) {
+            FlightRecorder.removePeriodicEvent(jfrHook);
+        }
+    }
+
+    private synchronized void log(){
+        long now = System.nanoTime();
+        long events = getEvents();
+        double interval = (now - lastNanos) / 1e9;
+        long collections = 0;
+        long collectionMillis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(0, collector.getCollectionCount());
+            collectionMillis += Math.max(0, collector.getCollectionTime());
+        }
+
+        StringBuilder line = new StringBuilder();
+        line.append(String.format("[metrics] %.1f s: %d events, %.0f events/s (%.0f average), %d rejected, "
+                        + "%d experiments, queue %d, superseded %d, time set up %.2f s, steps %.2f s, "
+                        + "output %.2f s, writes %.2f s, allocated %d MB, GC %d (%.2f s), written",
+                (now - startNanos) / 1e9, events, interval > 0 ? (events - lastEvents) / interval : 0.0,
+                getEventsPerSecond(), getRejectedEvents(), getExperiments(), getQueueSize(),
+                getSupersededInfections(), getSetUpSeconds(), getStepSeconds(), getOutputSeconds(),
+                getWriteSeconds(), getAllocatedBytes() >> 20, collections, collectionMillis / 1e3));
+        for (Map.Entry<String, Long> file : output.bytesWritten().entrySet()) {
+            line.append(' ').append(file.getKey()).append(' ').append(file.getValue() >> 10).append(" kB");
+        }
+        System.out.println(line);
+
+        lastEvents = events;
+        lastNanos = now;
+    }
+
+    //------------- RunMetricsMBean, totals over the probes
+    @Override
+    public long getEvents(){
+        long events = 0;
+        for (Probe probe : probes) {
+            events += probe.events();
+        }
+        return events;
+    }
+
+    @Override
+    public double getEventsPerSecond(){
+        return getEvents() / ((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    @Override
+    public long getRejectedEvents(){
+        long rejected = 0;
+        for (Probe probe : probes) {
+            probe.events();
+            rejected += probe.rejected;
+        }
+        return rejected;
+    }
+
+    @Override
+    public long getExperiments(){
+        long experiments = 0;
+        for (Probe probe : probes) {
+            probe.events();
+            experiments += probe.experiments;
+        }
+        return experiments;
+    }
+
+    @Override
+    public long getQueueSize(){
+        long queueSize = 0;
+        for (Probe probe : probes) {
+            probe.events();
+            queueSize += probe.queueSize;
+        }
+        return queueSize;
+    }
+
+    @Override
+    public long getSupersededInfections(){
+        long superseded = 0;
+        for (Probe probe : probes) {
+            probe.events();
+            superseded += probe.supersededInfections;
+        }
+        return superseded;
+    }
+
+    @Override
+    public double getSetUpSeconds(){
+        long nanos = 0;
+        for (Probe probe : probes) {
+            probe.events();
+            nanos += probe.setUpNanos;
+        }
+        return nanos / 1e9;
+    }
+
+    @Override
+    public double getStepSeconds(){
+        long nanos = 0;
+        for (Probe probe : probes) {
+            probe.events();
+            nanos += probe.stepNanos;
+        }
+        return nanos / 1e9;
+    }
+
+    @Override
+    public double getOutputSeconds(){
+        long nanos = 0;
+        for (Probe probe : probes) {
+            probe.events();
+            nanos += probe.outputNanos;
+        }
+        return nanos / 1e9;
+    }
+
+    @Override
+    public double getWriteSeconds(){
+        return output.writeNanos() / 1e9;
+    }
+
+    // Bytes allocated by the threads running experiments
+    @Override
+    public long getAllocatedBytes(){
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long bytes = 0;
+        for (Probe probe : probes) {
+            bytes += Math.max(0, threads.getThreadAllocatedBytes(probe.thread));
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getBytesWritten(){
+        long bytes = 0;
+        for (long written : output.bytesWritten().values()) {
+            bytes += written;
+        }
+        return bytes;
+    }
+
+    @Override
+    public Map<String, Long> getBytesWrittenByFile(){
+        return output.bytesWritten();
+    }
+
+    // Counters of one simulation context. The fields are written by its thread only, and made
+    // visible to readers by the volatile write of publish() (readers call events() first).
+    static class Probe {
+        final boolean enabled;
+        final long thread = Thread.currentThread().getId();
+
+        long rejected = 0;
+        long experiments = 0;
+        long queueSize = 0;
+        long supersededInfections = 0;
+        long setUpNanos = 0;
+        long stepNanos = 0;         // estimated from the sampled steps
+        long outputNanos = 0;
+        private volatile long events = 0;
+
+        Probe(boolean enabled){
+            this.enabled = enabled;
+        }
+
+        // Adds the events since the last call, with the current size of the queue
+        void publish(long newEvents, long queueSize, long supersededInfections){
+            if ( enabled ) {
+                this.queueSize = queueSize;
+                this.supersededInfections = supersededInfections;
+                events = events + newEvents;
+            }
+        }
+
+        long events(){
+            return events;
+        }
+    }
+
+    @Name("SIR.RunMetrics")
+    @Label("Run metrics")
+    @Category("SIR network")
+    @Description("Progress of the running ensemble, see RunMetrics")
+    @Period("1 s")
+    @StackTrace(false)
+    static class RunMetricsEvent extends jdk.jfr.Event {
+        @Label("Run")
+        int run;
+
+        @Label("Events")
+        long events;
+
+        @Label("Events per second")
+        double eventsPerSecond;
+
+        @Label("Experiments")
+        long experiments;
+
+        @Label("Queue size")
+        long queueSize;
+
+        @Label("Superseded infections")
+        long supersededInfections;
+
+        @Label("Bytes written")
+        long bytesWritten;
+    }
+}
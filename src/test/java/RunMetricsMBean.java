@@ -0,0 +1,33 @@
+import java.util.Map;
+
+// JMX view of RunMetrics (JMX requires a public interface named after the class)
+public interface RunMetricsMBean {
+
+    long getEvents();
+
+    // Average since the run started
+    double getEventsPerSecond();
+
+    long getRejectedEvents();
+
+    long getExperiments();
+
+    // Reactions pending in the queues of the running experiments
+    long getQueueSize();
+
+    long getSupersededInfections();
+
+    double getSetUpSeconds();
+
+    double getStepSeconds();
+
+    double getOutputSeconds();
+
+    double getWriteSeconds();
+
+    long getAllocatedBytes();
+
+    long getBytesWritten();
+
+    Map<String, Long> getBytesWrittenByFile();
+}
@@ -0,0 +1,7 @@
+public enum SeedingType {
+    Uniform,        // distinct nodes picked uniformly
+
+    DegreeWeighted, // distinct nodes picked with probability proportional to their degree
+
+    Targeted        // the highest-degree nodes, ties to the lowest ids
+}
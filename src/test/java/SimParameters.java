@@ -5,6 +5,32 @@ class SimParameters {
 
     Path currentPath = Paths.get("");
     Integer numberExperiments = 1; // stochastic realizations
+    Integer firstExperiment = 1;    // experiments run are firstExperiment, firstExperiment + 1, ...
+    Integer numberThreads = Runtime.getRuntime().availableProcessors();   // experiments run concurrently
+    EngineType engine = EngineType.NextReaction;    // stochastic simulation algorithm
+    Long randomSeed = 1234567890L;     // master seed: stream k runs experiment k, stream 0 draws the IC
+    RandomType randomType = RandomType.Xoshiro256StarStar;  // generator of the streams, see RandomStream
+    Long networkSeed = 1234567890L;    // seed of the contact network
+    // Stopping rules, see StoppingRule (infinite or 0 values turn a rule off)
+    Boolean stopAtExtinction = true;        // no infected (e.g. I or E) node left
+    Double maxTime = Double.POSITIVE_INFINITY;      // simulated time
+    Long maxEvents = Long.MAX_VALUE;
+    Double prevalenceThreshold = Double.POSITIVE_INFINITY;  // fraction of infectious nodes
+    Long minorOutbreakEvents = 0L;          // minor outbreak: after this many events,
+    Long minorOutbreakSize = 0L;            // fewer nodes than this ever infected
+    Double wallClockBudget = Double.POSITIVE_INFINITY;  // seconds per experiment
     String outputPath = currentPath.toAbsolutePath() + "/src/test/output/";
+    Boolean printSummarizedDynamicState = true;     // summarizedDynamicState.csv, one row per event
+    Boolean printEnsembleStatistics = true; // ensembleStatistics.csv and ensembleFinalState.csv, see EnsembleStatistics
+    Double statisticsTimeStep = 0.5;        // time grid of the ensemble statistics
+    Double statisticsEndTime = 100.0;
+    Boolean printBinaryEventLog = true;     // reactionHistory.bin, see BinaryEventLog
+    Boolean printStateTrajectory = true;    // stateTrajectory.bin, see StateTrajectoryWriter
+    Integer checkpointInterval = 0;         // reactions between full snapshots in stateTrajectory.bin, 0 for max(1000, N / 4)
+    Long historyMemoryBudget = 0L;          // bytes of reaction history kept in memory by thread, the rest spills to a temporary file, 0 for no limit
+    // Run metrics, see RunMetrics
+    Double metricsLogInterval = 0.0;        // seconds between log lines, 0 for none
+    Boolean metricsJmx = false;             // JMX bean
+    Boolean metricsJfr = false;             // JFR event
 
 }
@@ -1,205 +1,182 @@
-import javafx.util.Pair;
-import org.apache.commons.math3.distribution.GammaDistribution;
-
-import java.io.IOException;
-import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-
-
-class Simulation {
-    private Integer randomSeed = 1234567890;
-    private Random random;
-    private GammaDistribution infectiousPeriodDistribution;
-
-    private NetworkState initialState;
-
-    private NavigableMap<Double, ReactionSpecification> reactionsToCome = new TreeMap<>();   // list of potential reactions to come
-    private Map<Integer, Double> recoveryTimesByNode = new HashMap<>();   // Future recovery Times by node
-    private Map<Integer, Double> infectionTimesByNode = new HashMap<>();   // Future infection Times by node
+// Next-reaction engine: a node entering a compartment draws the time of its spontaneous transition
+// out of it and, if the compartment is infectious, an exponential contact time for each neighbor it
+// can infect, keeping those before its own exit. The earliest one per target is kept in the queue.
+// Since the whole infectious period is known when contacts are drawn, this is exact for any period
+// distribution, not only the exponential. Nodes that become susceptible again (SIS, SIRS) draw their
+// incoming contacts from their infectious neighbors, which is exact by memorylessness of contacts.
+class Simulation extends SimulationEngine {
+    private RandomStream random;
+    private final EpidemicModel model;
+
+    private EventQueue reactionsToCome;     // potential reactions to come, at most one contact and one spontaneous transition per node
 
     Simulation(NetworkState initialState, Parameters parameters){
-        this.initialState = initialState;
+        super(initialState);
+        this.reactionsToCome = new EventQueue(parameters.N);
 
-        this.infectiousPeriodDistribution = new GammaDistribution(parameters.recov_scale, parameters.recov_shape);
+        this.model = initialState.getModel();
     }
 
-    void seedRNG(){
-        this.infectiousPeriodDistribution.reseedRandomGenerator(randomSeed);
-        this.random = new Random(randomSeed);
+    @Override
+    void seedRNG(RandomStream random){
+        this.random = random;
     }
 
+    @Override
     void simulationSetUp(NetworkState initialState,
-                         Map<Integer, List<Integer>> networkNeighbors,
+                         ContactNetwork network,
                          Parameters parameters){
-        Map<Integer, Compartments> ic = initialState.getState();
-
-        recoveryTimesByNode.clear();
-        infectionTimesByNode.clear();
         reactionsToCome.clear();
 
-        // Adding recovery and transmission times to initially infected nodes
-        for ( Integer node : ic.keySet() ){
-            if ( ic.get(node) == Compartments.I ){
-                assignRecoveryTimeToInfectedNode(node, initialState, parameters);
+        // Adding spontaneous transitions, and contacts from initially infectious nodes (incoming contacts
+        // of susceptible nodes are the same contacts, they are not drawn twice)
+        for (int i = 0; i < numberOfActiveNodes; i++) {
+            int node = activeNodes[i];
+            int compartment = initialState.getState(node);
+            assignSpontaneousTransition(node, compartment, initialState);
 
-                assignTransmissionTimesToSourceNode(node, initialState, networkNeighbors, parameters);
+            if ( model.infectious[compartment] ){
+                assignTransmissionTimesToSourceNode(node, compartment, initialState, network);
             }
         }
     }
 
-    private Double transmissionTime(Double rate){
+    private double transmissionTime(double rate){
         if ( rate == 0 ) {
             return Double.POSITIVE_INFINITY;
         } else {
-            return Math.log(1 - random.nextDouble()) / ( - rate );
+            return random.nextExponential() / rate;
         }
     }
 
-    private Double recoveryTime(Double rate) {
-        return Math.log(1 - random.nextDouble()) / ( - rate );
-    }
-
-    private void assignRecoveryTimeToInfectedNode(Integer node, NetworkState networkState, Parameters parameters){
+    private void assignSpontaneousTransition(int node, int compartment, NetworkState networkState){
+        if ( model.spontaneousTarget[compartment] < 0 ) {
+            return;
+        }
 
-        Double currentTime = networkState.getTime();
+        double currentTime = networkState.getTime();
 
-        Double recoveryTime = currentTime + recoveryTime(1.0 / parameters.recov_scale);
-        recoveryTimesByNode.put(node, recoveryTime);
+        double transitionTime = currentTime + model.spontaneousPeriod[compartment].sample(random);
 
-        reactionsToCome.put(recoveryTime,
-                new ReactionSpecification(ReactionType.Recovery, Arrays.asList(node)));
+        reactionsToCome.scheduleRecovery(node, transitionTime);
     }
 
-    private void assignTransmissionTimesToSourceNode(Integer sourceNode,
-                                                     NetworkState networkState,
-                                                     Map<Integer, List<Integer>> networkNeighbors, Parameters parameters){
+    private void assignTransmissionTimesToSourceNode(int sourceNode, int sourceCompartment,
+                                                     NetworkState networkState, ContactNetwork network){
 
-        Double currentTime = networkState.getTime();
+        double currentTime = networkState.getTime();
+        double sourceRecoveryTime = reactionsToCome.recoveryTime(sourceNode);
 
         // Cycling over contacts of node to consider transmission
-        for (Integer targetNode : networkNeighbors.get(sourceNode)){
-            if ( networkState.getState().get(targetNode) == Compartments.S ) {
-                Double potentialInfectionTime = currentTime + transmissionTime(parameters.beta);
-
-                // If transmission happens before recovery of source, proceed
-                if ( potentialInfectionTime <= recoveryTimesByNode.get(sourceNode) ){
-
-                    // Check if target node had already been marked for transmission
-                    if ( !infectionTimesByNode.containsKey(targetNode) ) {
-                        infectionTimesByNode.put(targetNode, potentialInfectionTime);
-                        reactionsToCome.put(potentialInfectionTime,
-                                new ReactionSpecification(ReactionType.Infection, Arrays.asList(sourceNode, targetNode)));
-                    } else {
-                        if ( potentialInfectionTime < infectionTimesByNode.get(targetNode) ){
-                            // Replacing infection of target node with new infection time
-                            reactionsToCome.remove(infectionTimesByNode.get(targetNode));
-
-                            infectionTimesByNode.put(targetNode, potentialInfectionTime);
-                            reactionsToCome.put(potentialInfectionTime,
-                                    new ReactionSpecification(ReactionType.Infection, Arrays.asList(sourceNode, targetNode)));
-                        }
-                    }
+        for (int k = network.neighborsStart(sourceNode); k < network.neighborsEnd(sourceNode); k++){
+            int targetNode = network.neighbor(k);
+            double rate = model.contactRate[networkState.getState(targetNode)][sourceCompartment];
+            if ( rate > 0 ) {
+                double potentialInfectionTime = currentTime + transmissionTime(rate);
+
+                // If transmission happens before recovery of source and before any infection
+                // already pending for the target node, it replaces that infection
+                if ( potentialInfectionTime <= sourceRecoveryTime
+                        && potentialInfectionTime < reactionsToCome.infectionTime(targetNode) ){
+                    reactionsToCome.scheduleInfection(sourceNode, targetNode, potentialInfectionTime);
                 }
             }
         }
     }
 
-    private Pair<Double, Map<Compartments, Long>> summarizedNetworkState(NetworkState networkState){
-        Map<Compartments, Long> numberOfNodesByCompartment = networkState.getState()
-                .values()
-                .stream()
-                .collect(Collectors.groupingBy(
-                        Function.identity(),
-                        Collectors.counting()));
+    private void assignTransmissionTimesToTargetNode(int targetNode, int targetCompartment,
+                                                     NetworkState networkState, ContactNetwork network){
 
-        Arrays.stream(Compartments.values())
-                .forEach(c -> numberOfNodesByCompartment.putIfAbsent(c, (long) 0));
+        double currentTime = networkState.getTime();
 
-        Pair<Double, Map<Compartments, Long>> summarizedNetworkState =
-                new Pair<>(networkState.getTime(), numberOfNodesByCompartment);
+        // Cycling over contacts of node, keeping the earliest contact before the recovery of its source
+        for (int k = network.neighborsStart(targetNode); k < network.neighborsEnd(targetNode); k++){
+            int sourceNode = network.neighbor(k);
+            double rate = model.contactRate[targetCompartment][networkState.getState(sourceNode)];
+            if ( rate > 0 ) {
+                double potentialInfectionTime = currentTime + transmissionTime(rate);
 
-        return summarizedNetworkState;
+                if ( potentialInfectionTime <= reactionsToCome.recoveryTime(sourceNode)
+                        && potentialInfectionTime < reactionsToCome.infectionTime(targetNode) ){
+                    reactionsToCome.scheduleInfection(sourceNode, targetNode, potentialInfectionTime);
+                }
+            }
+        }
     }
 
-    private void reactionStep(NetworkState networkState,
-                              NavigableMap<Double, ReactionSpecification> reactionHistory,
-                              Map<Integer, List<Integer>> networkNeighbors, Parameters parameters){
-
-        // next reaction time
-        Double reactionTime = reactionsToCome.firstKey();
-
-        // Modifying oldState into newState because of reaction
-        SortedMap<Integer, Compartments> newState = new TreeMap<>();
-        newState.putAll(networkState.getState());
+    // Moves a node to a new compartment and draws the reactions that follow from it
+    private void enterCompartment(int node, int compartment, NetworkState networkState, ContactNetwork network){
+        networkState.setState(node, compartment);
 
-        if ( reactionsToCome.firstEntry().getValue().reactionType == ReactionType.Infection ){
-
-            Integer sourceNode = reactionsToCome.firstEntry().getValue().reactionNodes.get(0);
-            Integer targetNode = reactionsToCome.firstEntry().getValue().reactionNodes.get(1);
-            reactionsToCome.remove(reactionTime);
+        // Whatever was pending for the node belonged to its previous compartment
+        reactionsToCome.cancelInfection(node);
+        reactionsToCome.cancelRecovery(node);
 
+        assignSpontaneousTransition(node, compartment, networkState);
+        if ( model.infectious[compartment] ) {
+            assignTransmissionTimesToSourceNode(node, compartment, networkState, network);
+        }
+        if ( model.contactTarget[compartment] >= 0 ) {
+            assignTransmissionTimesToTargetNode(node, compartment, networkState, network);
+        }
+    }
 
-            // Target node is still susceptible by construction of reactionsToCome table
-            newState.put(targetNode, Compartments.I);
+    @Override
+    boolean hasReactionsToCome(){
+        return !reactionsToCome.isEmpty();
+    }
 
-            // Updating state
-            networkState.setTime(reactionTime);
-            networkState.setState(newState);
+    @Override
+    int queueSize(){
+        return reactionsToCome.size();
+    }
 
-            // Updating reaction history
-            reactionHistory.put(reactionTime,
-                    new ReactionSpecification(ReactionType.Infection, Arrays.asList(sourceNode, targetNode)));
+    @Override
+    long supersededInfections(){
+        return reactionsToCome.supersededInfections();
+    }
 
-            // Assigning recovery and transmission times for newly infected node
-            assignRecoveryTimeToInfectedNode(targetNode, networkState, parameters);
-            assignTransmissionTimesToSourceNode(targetNode, networkState, networkNeighbors, parameters);
+    @Override
+    int reactionStep(NetworkState networkState,
+                     ReactionHistory reactionHistory,
+                     ContactNetwork network, Parameters parameters){
 
+        // next reaction time
+        double reactionTime = reactionsToCome.nextTime();
 
+        if ( reactionsToCome.nextType() == ReactionType.Infection ){
 
-        } else if ( reactionsToCome.firstEntry().getValue().reactionType == ReactionType.Recovery ) {
-            Integer recoveringNode = reactionsToCome.firstEntry().getValue().reactionNodes.get(0);
-            reactionsToCome.remove(reactionTime);
+            int sourceNode = reactionsToCome.nextSource();
+            int targetNode = reactionsToCome.nextNode();
+            reactionsToCome.removeNext();
 
-            newState.put(recoveringNode, Compartments.R);
+            // Target node is still in the compartment the contact was drawn for, pending contacts
+            // are cancelled whenever a node changes compartment
+            int newCompartment = model.contactTarget[networkState.getState(targetNode)];
 
-            // Updating state
+            // Updating state in place, with the reactions of the new compartment
             networkState.setTime(reactionTime);
-            networkState.setState(newState);
+            enterCompartment(targetNode, newCompartment, networkState, network);
 
             // Updating reaction history
-            reactionHistory.put(reactionTime,
-                    new ReactionSpecification(ReactionType.Recovery, Arrays.asList(recoveringNode)));
-        }
-    }
-
-    void reactionStepping(Integer experiment, NetworkState networkState,
-                          NavigableMap<Double, ReactionSpecification> reactionHistory,
-                          Map<Integer, List<Integer>> networkNeighbors, Parameters parameters) {
+            reactionHistory.add(reactionTime, ReactionType.Infection, sourceNode, targetNode, newCompartment);
 
-        PrintOutput printOutput = new PrintOutput();
+            return targetNode;
 
-        // Printing IC
-        printOutput.printNetworkState(experiment, networkState);
-        printOutput.printSummarizedNetworkState(experiment, summarizedNetworkState(networkState));
+        } else {
+            int recoveringNode = reactionsToCome.nextNode();
+            reactionsToCome.removeNext();
 
-        while ( reactionsToCome.size() > 0 ) {
-//        for (int i = 1; i <= 5; i++){
-            // Single step
-            reactionStep(networkState, reactionHistory, networkNeighbors, parameters);
-            
-            // Printing new state to files
-            if ( parameters.N <= 200 & experiment <= 10){
-                printOutput.printNetworkState(experiment, networkState);
-            }
+            int newCompartment = model.spontaneousTarget[networkState.getState(recoveringNode)];
 
-            // Counting number of nodes in each compartment
-            printOutput.printSummarizedNetworkState(experiment, summarizedNetworkState(networkState));
-        }
+            // Updating state in place, with the reactions of the new compartment
+            networkState.setTime(reactionTime);
+            enterCompartment(recoveringNode, newCompartment, networkState, network);
 
-        // Printing to File
-        printOutput.printNetworkStateMinimal(experiment, initialState, reactionHistory);
-        printOutput.printReactionHistory(experiment, reactionHistory);
+            // Updating reaction history
+            reactionHistory.add(reactionTime, ReactionType.Recovery, recoveringNode, recoveringNode, newCompartment);
 
+            return recoveringNode;
+        }
     }
 }
@@ -0,0 +1,329 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+// Benchmarks of the simulation hot paths: network build, simulation set up, reaction stepping
+// (events/s) and every output writer, over a grid of N, p and R0.
+// Every benchmark runs warmup iterations followed by measured ones, and reports operations per
+// second and bytes allocated per operation (thread allocation counter, like JMH's gc profiler).
+// JMH itself cannot be used: it refuses benchmark classes in the default package, where all of
+// this code lives. Run with
+//
+//   mvn -B -Pbenchmark verify -Dbenchmark.args="N=1000,100000 k=5 R0=2.5 filter=reactionStepping"
+//
+// Arguments (all optional): N, p or k (mean degree, p = k / (N - 1)), R0, engine (EngineType) as
+// comma separated lists, model (ModelType), network (NetworkType, k sets the links of Barabási-Albert
+// and Watts-Strogatz networks, the other parameters keep their defaults), warmup and iterations
+// (counts), time (seconds per iteration), filter (benchmark name prefix), csv (file the results are
+// also written to).
+class SimulationBenchmark {
+    private static final long RANDOM_SEED = 1234567890L;
+
+    // One invocation of a benchmark, returns the number of operations it performed
+    interface Invocation {
+        long run() throws IOException;
+    }
+
+    // A benchmark with its state set up for one point of the parameter grid, sinks it opens go to resources
+    interface Fixture {
+        Invocation setUp(Parameters parameters, EngineType engineType, Path outputPath,
+                         List<OutputSink> resources) throws IOException;
+    }
+
+    private static final Map<String, Fixture> BENCHMARKS = new LinkedHashMap<>();
+    static {
+        BENCHMARKS.put("buildNetwork", (parameters, engineType, outputPath, resources) -> () -> {
+            new NetworkBuilder().buildNetwork(parameters, RANDOM_SEED);
+            return 1;
+        });
+
+        BENCHMARKS.put("simulationSetUp", (parameters, engineType, outputPath, resources) -> {
+            Experiment experiment = new Experiment(parameters, engineType);
+            return () -> {
+                experiment.setUp();
+                return 1;
+            };
+        });
+
+        // One operation is one reaction
+        BENCHMARKS.put("reactionStepping", (parameters, engineType, outputPath, resources) -> {
+            Experiment experiment = new Experiment(parameters, engineType);
+            OutputSink output = new NullOutputSink();
+            return () -> experiment.run(output).size();
+        });
+
+        // Writers: one operation is one row (one record for the binary writers)
+        BENCHMARKS.put("printNetworkState", (parameters, engineType, outputPath, resources) -> {
+            PrintOutput output = new PrintOutput(outputPath.toString() + "/", parameters.N,
+                    EpidemicModel.create(parameters.model, parameters));
+            resources.add(output);
+            Experiment experiment = new Experiment(parameters, engineType);
+            experiment.run(new NullOutputSink());
+            return () -> {
+                for (int i = 0; i < 100; i++) {
+                    output.printNetworkState(1, experiment.networkState);
+                }
+                return 100;
+            };
+        });
+
+        BENCHMARKS.put("printSummarizedNetworkState", (parameters, engineType, outputPath, resources) -> {
+            PrintOutput output = new PrintOutput(outputPath.toString() + "/", parameters.N,
+                    EpidemicModel.create(parameters.model, parameters));
+            resources.add(output);
+            Experiment experiment = new Experiment(parameters, engineType);
+            experiment.run(new NullOutputSink());
+            return () -> {
+                for (int i = 0; i < 10000; i++) {
+                    output.printSummarizedNetworkState(1, experiment.networkState);
+                }
+                return 10000;
+            };
+        });
+
+        // One operation is one row, of dynamicStateMinimal.csv or reactionHistory.csv, written in the same pass
+        BENCHMARKS.put("printReactions", (parameters, engineType, outputPath, resources) -> {
+            PrintOutput output = new PrintOutput(outputPath.toString() + "/", parameters.N,
+                    EpidemicModel.create(parameters.model, parameters));
+            resources.add(output);
+            Experiment experiment = new Experiment(parameters, engineType);
+            ReactionHistory reactionHistory = experiment.run(new NullOutputSink());
+            return () -> {
+                output.printReactions(1, experiment.initialState, reactionHistory);
+                return parameters.N + 2 * reactionHistory.size();
+            };
+        });
+
+        BENCHMARKS.put("binaryEventLog", (parameters, engineType, outputPath, resources) -> {
+            BinaryEventLog output = new BinaryEventLog(outputPath.resolve("reactionHistory.bin"),
+                    RANDOM_SEED, parameters, EpidemicModel.create(parameters.model, parameters));
+            resources.add(output);
+            Experiment experiment = new Experiment(parameters, engineType);
+            ReactionHistory reactionHistory = experiment.run(new NullOutputSink());
+            return () -> {
+                output.printReactions(1, experiment.initialState, reactionHistory);
+                return reactionHistory.size();
+            };
+        });
+
+        // One operation is one reaction appended to a history of 1 MB of columns, spilling the rest, and read back
+        BENCHMARKS.put("spilledHistory", (parameters, engineType, outputPath, resources) -> {
+            Experiment experiment = new Experiment(parameters, engineType);
+            ReactionHistory reactionHistory = experiment.run(new NullOutputSink());
+            ReactionHistory spilled = new ReactionHistory(1024, 1 << 20);
+            resources.add(new NullOutputSink() {      // deletes the spill file once the benchmark is over
+                @Override
+                public void close(){
+                    spilled.close();
+                }
+            });
+            return () -> {
+                spilled.clear();
+                ReactionHistory.Chunks reactions = reactionHistory.chunks();
+                while ( reactions.next() ) {
+                    for (int reaction = 0; reaction < reactions.size(); reaction++) {
+                        spilled.add(reactions.time(reaction), reactions.type(reaction), reactions.source(reaction),
+                                reactions.node(reaction), reactions.compartment(reaction));
+                    }
+                }
+                long nodes = 0;
+                reactions = spilled.chunks();
+                while ( reactions.next() ) {
+                    for (int reaction = 0; reaction < reactions.size(); reaction++) {
+                        nodes += reactions.node(reaction);
+                    }
+                }
+                return nodes > 0 ? spilled.size() : 0;
+            };
+        });
+
+        // One operation is one reaction of an experiment replayed into the writer
+        BENCHMARKS.put("stateTrajectory", (parameters, engineType, outputPath, resources) -> {
+            StateTrajectoryWriter output = new StateTrajectoryWriter(outputPath.resolve("stateTrajectory.bin"),
+                    parameters.N, 1000, EpidemicModel.create(parameters.model, parameters));
+            resources.add(output);
+            Experiment experiment = new Experiment(parameters, engineType);
+            return () -> experiment.run(output).size();
+        });
+    }
+
+    // Network, initial state and simulation of one grid point
+    private static class Experiment {
+        final Parameters parameters;
+        final EpidemicModel model;
+        final ContactNetwork network;
+        final NetworkState initialState;
+        final SimulationContext context;
+        NetworkState networkState;
+        int experiment = 0;
+
+        Experiment(Parameters parameters, EngineType engineType){
+            this.parameters = parameters;
+            NetworkBuilder networkBuilder = new NetworkBuilder();
+            networkBuilder.buildNetwork(parameters, RANDOM_SEED);
+            this.network = networkBuilder.network;
+            if ( parameters.networkType != NetworkType.ErdosRenyi ) {
+                parameters.setMeanDegree(network.meanDegree());
+            }
+            this.model = EpidemicModel.create(parameters.model, parameters);
+            IC ic = new IC(0.0, parameters, model, network,
+                    RandomStream.create(RandomType.Xoshiro256StarStar, RANDOM_SEED, 0));
+            this.initialState = ic.initialState;
+            this.context = new SimulationContext(engineType, ic, parameters, new ArrayList<>(), RunMetrics.NONE, 0);
+            this.networkState = context.networkState();
+        }
+
+        void setUp(){
+            context.setUp(RandomStream.create(RandomType.Xoshiro256StarStar, RANDOM_SEED, 11 + experiment++),
+                    network, parameters);
+        }
+
+        // Experiment numbers above 10 keep the dense state output off, as in production runs
+        ReactionHistory run(OutputSink output){
+            int number = 11 + experiment++;
+            context.runExperiment(number, RandomStream.create(RandomType.Xoshiro256StarStar, RANDOM_SEED, number),
+                    network, parameters, output);
+            return context.reactionHistory();
+        }
+    }
+
+    private static class NullOutputSink implements OutputSink {
+        @Override
+        public void printNetworkState(int experiment, NetworkState networkState){
+        }
+
+        @Override
+        public void printSummarizedNetworkState(int experiment, NetworkState networkState){
+        }
+
+
+        @Override
+        public void close(){
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new TreeMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if ( option.length != 2 ) {
+                throw new IllegalArgumentException("Expected name=value, got " + arg);
+            }
+            options.put(option[0], option[1]);
+        }
+
+        int[] Ns = Arrays.stream(options.getOrDefault("N", "1000,10000").split(",")).mapToInt(Integer::parseInt).toArray();
+        double[] ps = doubles(options.get("p"));
+        double[] ks = doubles(options.getOrDefault("k", "5"));
+        double[] R0s = doubles(options.getOrDefault("R0", "2.5"));
+        EngineType[] engineTypes = Arrays.stream(options.getOrDefault("engine", "NextReaction").split(","))
+                .map(EngineType::valueOf).toArray(EngineType[]::new);
+        ModelType modelType = ModelType.valueOf(options.getOrDefault("model", "SIR"));
+        NetworkType networkType = NetworkType.valueOf(options.getOrDefault("network", "ErdosRenyi"));
+        int warmupIterations = Integer.parseInt(options.getOrDefault("warmup", "3"));
+        int measuredIterations = Integer.parseInt(options.getOrDefault("iterations", "5"));
+        double iterationTime = Double.parseDouble(options.getOrDefault("time", "1"));
+        String filter = options.getOrDefault("filter", "");
+
+        List<String> results = new ArrayList<>();
+        results.add("benchmark, engine, N, p, R0, opsPerSecond, opsPerSecondError, bytesPerOp");
+        System.out.printf("%-28s %-12s %9s %10s %5s %16s %12s %14s%n",
+                "Benchmark", "Engine", "N", "p", "R0", "ops/s", "error", "bytes/op");
+
+        Path outputPath = Files.createTempDirectory("sir-benchmark");
+        try {
+            for (int N : Ns) {
+                double[] pointPs = ps != null ? ps : Arrays.stream(ks).map(k -> Math.min(1.0, k / (N - 1))).toArray();
+                for (double p : pointPs) {
+                    for (double R0 : R0s) {
+                        for (EngineType engineType : engineTypes) {
+                            Parameters parameters = new Parameters(N, p, R0, 5.0, 1.0);
+                            parameters.model = modelType;
+                            parameters.networkType = networkType;
+                            parameters.ba_m = Math.max(1, (int) Math.round((N - 1) * p / 2));
+                            parameters.ws_k = 2 * parameters.ba_m;
+
+                            for (Map.Entry<String, Fixture> benchmark : BENCHMARKS.entrySet()) {
+                                if ( !benchmark.getKey().startsWith(filter) ) {
+                                    continue;
+                                }
+                                List<OutputSink> resources = new ArrayList<>();
+                                double[] result = measure(
+                                        benchmark.getValue().setUp(parameters, engineType, outputPath, resources),
+                                        warmupIterations, measuredIterations, iterationTime);
+                                for (OutputSink resource : resources) {
+                                    resource.close();
+                                }
+
+                                System.out.printf("%-28s %-12s %9d %10.3g %5.2f %16.1f %12.1f %14.1f%n",
+                                        benchmark.getKey(), engineType, N, p, R0, result[0], result[1], result[2]);
+                                results.add(benchmark.getKey() + ", " + engineType + ", " + N + ", " + p + ", "
+                                        + R0 + ", " + result[0] + ", " + result[1] + ", " + result[2]);
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(outputPath)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+
+        if ( options.containsKey("csv") ) {
+            try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(Paths.get(options.get("csv"))))) {
+                results.forEach(csv::println);
+            }
+        }
+    }
+
+    // Mean and standard deviation of ops/s over the measured iterations, and mean bytes allocated per op
+    private static double[] measure(Invocation invocation, int warmupIterations, int measuredIterations,
+                                    double iterationTime) throws IOException {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        double[] opsPerSecond = new double[measuredIterations];
+        long totalOps = 0;
+        long totalBytes = 0;
+        for (int iteration = -warmupIterations; iteration < measuredIterations; iteration++) {
+            long ops = 0;
+            long bytesBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            long end = start + (long) (iterationTime * 1e9);
+            long now;
+            do {
+                ops += invocation.run();
+                now = System.nanoTime();
+            } while ( now < end );
+            long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+
+            if ( iteration >= 0 ) {
+                opsPerSecond[iteration] = ops / ((now - start) / 1e9);
+                totalOps += ops;
+                totalBytes += bytes;
+            }
+        }
+
+        double mean = Arrays.stream(opsPerSecond).average().orElse(Double.NaN);
+        double variance = Arrays.stream(opsPerSecond).map(x -> (x - mean) * (x - mean)).sum()
+                / Math.max(1, measuredIterations - 1);
+        return new double[]{mean, Math.sqrt(variance), totalOps > 0 ? (double) totalBytes / totalOps : Double.NaN};
+    }
+
+    private static double[] doubles(String list){
+        return list == null ? null : Arrays.stream(list.split(",")).mapToDouble(Double::parseDouble).toArray();
+    }
+}
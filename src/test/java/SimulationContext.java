@@ -0,0 +1,90 @@
+import java.util.List;
+
+// Everything a worker thread needs to run experiments one after the other: the engine, the state
+// it updates in place and the reaction history. They are allocated once, sized from N, and reset
+// between experiments in time proportional to what the previous experiment changed rather than to
+// N, so that ensembles of many small experiments run without allocating in steady state.
+class SimulationContext {
+    private static final int MAX_EXPECTED_REACTIONS = 1 << 22;
+
+    private final SimulationEngine simulation;
+    private final IC ic;
+    private final NetworkState initialState;    // the IC's, or a copy getting the seeds of every experiment
+    private final int[] seeds;                  // seeds of the current experiment, when it draws its own
+    private boolean seeded = false;
+    private final NetworkState networkState;
+    private final ReactionHistory reactionHistory;
+    private final RunMetrics.Probe probe;
+
+    SimulationContext(EngineType engineType, IC ic, Parameters parameters,
+                      List<StoppingRule> stoppingRules, RunMetrics metrics, long historyMemoryBudget){
+        this.probe = metrics.newProbe();
+        this.ic = ic;
+        this.initialState = ic.reseedEachExperiment() ? ic.initialState.snapshot() : ic.initialState;
+        this.seeds = ic.reseedEachExperiment() ? new int[ic.numberOfSeeds()] : null;
+        this.simulation = SimulationEngine.create(engineType, initialState, parameters);
+        this.simulation.setStoppingRules(stoppingRules);
+        this.simulation.setProbe(probe);
+        this.networkState = initialState.snapshot();
+
+        // Every node infected and recovering once, larger histories grow on demand up to the budget
+        this.reactionHistory = new ReactionHistory((int) Math.min(2L * initialState.size(), MAX_EXPECTED_REACTIONS),
+                historyMemoryBudget);
+    }
+
+    // Runs one experiment from the initial state, the RNG stream is the experiment's own
+    void runExperiment(int experiment, RandomStream random, ContactNetwork network,
+                       Parameters parameters, OutputSink output){
+        setUp(random, network, parameters);
+
+        // Simulation
+        simulation.reactionStepping(experiment, networkState, reactionHistory, network, parameters, output);
+    }
+
+    // Resets the state and history left by the previous experiment and sets up the next one
+    void setUp(RandomStream random, ContactNetwork network, Parameters parameters){
+        long start = probe.enabled ? System.nanoTime() : 0;
+
+        // state of network in time, back to the initial state and updated in place by the simulation
+        networkState.resetTo(initialState, reactionHistory);
+
+        // Seeds of the experiment, from its own stream, replacing the ones of the previous experiment
+        if ( seeds != null ) {
+            if ( seeded ) {
+                ic.unseed(initialState, seeds);
+                ic.unseed(networkState, seeds);
+            }
+            ic.seed(initialState, seeds, random);
+            for (int node : seeds) {
+                networkState.setState(node, initialState.getState(node));
+            }
+            simulation.setSeedNodes(seeds);
+            seeded = true;
+        }
+
+        // list of reactions and when they occur
+        reactionHistory.clear();
+
+        // Sim setup
+        simulation.seedRNG(random);
+        simulation.simulationSetUp(networkState, network, parameters);
+        if ( probe.enabled ) {
+            probe.setUpNanos += System.nanoTime() - start;
+        }
+    }
+
+    // State at the end of the last experiment
+    NetworkState networkState(){
+        return networkState;
+    }
+
+    // Reactions of the last experiment
+    ReactionHistory reactionHistory(){
+        return reactionHistory;
+    }
+
+    // Releases the spill file of the reaction history, once the context runs no more experiments
+    void close(){
+        reactionHistory.close();
+    }
+}
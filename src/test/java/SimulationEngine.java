@@ -0,0 +1,170 @@
+import java.util.Arrays;
+import java.util.List;
+
+// Stochastic simulation algorithm driving one experiment at a time. Engines only differ in how
+// they pick the next reaction, the stepping loop and everything it reports are shared.
+abstract class SimulationEngine {
+    static final String NO_REACTIONS_TO_COME = "NoReactionsToCome";     // experiment ran to the end
+
+    protected final NetworkState initialState;
+    protected int[] activeNodes;            // nodes of the initial state with reactions of their own,
+    protected int numberOfActiveNodes;      // activeNodes[0 .. numberOfActiveNodes - 1]
+    private final int numberOfInitialActiveNodes;   // before any seeds of an experiment
+    private StoppingRule[] stoppingRules = new StoppingRule[0];
+    private RunMetrics.Probe probe = RunMetrics.NONE.newProbe();
+
+    SimulationEngine(NetworkState initialState){
+        this.initialState = initialState;
+        this.activeNodes = activeNodes(initialState);
+        this.numberOfActiveNodes = activeNodes.length;
+        this.numberOfInitialActiveNodes = activeNodes.length;
+    }
+
+    // Nodes in infectious compartments or with a spontaneous transition out of theirs, the only ones
+    // with reactions to set up at the start of an experiment
+    private static int[] activeNodes(NetworkState state){
+        EpidemicModel model = state.getModel();
+        int[] nodes = new int[state.size()];
+        int numberOfNodes = 0;
+        for (int node = 1; node <= state.size(); node++) {
+            if ( isActive(model, state.getState(node)) ) {
+                nodes[numberOfNodes++] = node;
+            }
+        }
+        return Arrays.copyOf(nodes, numberOfNodes);
+    }
+
+    private static boolean isActive(EpidemicModel model, int compartment){
+        return model.infectious[compartment] || model.spontaneousTarget[compartment] >= 0;
+    }
+
+    // Seeds the initial state got for the next experiment (IC.reseedEachExperiment), moved there from
+    // the initial compartment: they are active on top of the nodes the initial state had
+    void setSeedNodes(int[] seeds){
+        if ( activeNodes.length < numberOfInitialActiveNodes + seeds.length ) {
+            activeNodes = Arrays.copyOf(activeNodes, numberOfInitialActiveNodes + seeds.length);
+        }
+        numberOfActiveNodes = numberOfInitialActiveNodes;
+        EpidemicModel model = initialState.getModel();
+        if ( !isActive(model, model.initialCompartment) ) {
+            System.arraycopy(seeds, 0, activeNodes, numberOfActiveNodes, seeds.length);
+            numberOfActiveNodes += seeds.length;
+        }
+    }
+
+    static SimulationEngine create(EngineType engineType, NetworkState initialState, Parameters parameters){
+        switch (engineType) {
+            case Gillespie:
+                return new GillespieSimulation(initialState, parameters);
+            case LazyNextReaction:
+                return new LazySimulation(initialState, parameters);
+            case DeltaStepping:
+                return new DeltaSteppingSimulation(initialState, parameters);
+            case NextReaction:
+            default:
+                return new Simulation(initialState, parameters);
+        }
+    }
+
+    // Rules ending experiments early, checked in order after every event
+    void setStoppingRules(List<StoppingRule> stoppingRules){
+        this.stoppingRules = stoppingRules.toArray(new StoppingRule[0]);
+    }
+
+    // Counters the experiments report to, see RunMetrics
+    void setProbe(RunMetrics.Probe probe){
+        this.probe = probe;
+    }
+
+    // Sets the RNG stream of the next experiment
+    abstract void seedRNG(RandomStream random);
+
+    // Prepares the reactions to come from the state at the start of an experiment, a copy of the
+    // initial state the engine was created with. Only the active nodes are visited.
+    abstract void simulationSetUp(NetworkState initialState, ContactNetwork network, Parameters parameters);
+
+    abstract boolean hasReactionsToCome();
+
+    // Number of reactions currently queued
+    abstract int queueSize();
+
+    // Pending infections replaced by earlier ones so far, for engines that schedule them
+    long supersededInfections(){
+        return 0;
+    }
+
+    // Applies the next reaction, returns the node that changed compartment, or 0 when the step
+    // only advanced time (a rejected event)
+    abstract int reactionStep(NetworkState networkState,
+                              ReactionHistory reactionHistory,
+                              ContactNetwork network, Parameters parameters);
+
+    void reactionStepping(Integer experiment, NetworkState networkState,
+                          ReactionHistory reactionHistory,
+                          ContactNetwork network, Parameters parameters, OutputSink printOutput) {
+
+        // Printing IC
+        printOutput.printNetworkState(experiment, networkState);
+        printOutput.printSummarizedNetworkState(experiment, networkState);
+
+        long startNanos = System.nanoTime();
+        long numberOfEvents = 0;
+        long publishedEvents = 0;
+        long steps = 0;
+        long sampleStart = 0;
+        String stoppedBy = NO_REACTIONS_TO_COME;
+
+        stepping:
+        while ( hasReactionsToCome() ) {
+            // Timings are measured on one step in RunMetrics.SAMPLE_INTERVAL
+            boolean sampled = probe.enabled && (++steps & (RunMetrics.SAMPLE_INTERVAL - 1)) == 0;
+            if ( sampled ) {
+                sampleStart = System.nanoTime();
+            }
+
+            // Single step
+            int changedNode = reactionStep(networkState, reactionHistory, network, parameters);
+            if ( sampled ) {
+                long now = System.nanoTime();
+                probe.stepNanos += RunMetrics.SAMPLE_INTERVAL * (now - sampleStart);
+                sampleStart = now;
+            }
+            if ( changedNode == 0 ) {
+                probe.rejected++;
+                continue;
+            }
+            numberOfEvents++;
+
+            // Printing new state to files
+            printOutput.printStateChange(experiment, networkState, changedNode);
+            if ( parameters.N <= 200 & experiment <= 10){
+                printOutput.printNetworkState(experiment, networkState);
+            }
+
+            // Counting number of nodes in each compartment
+            printOutput.printSummarizedNetworkState(experiment, networkState);
+            if ( sampled ) {
+                probe.outputNanos += RunMetrics.SAMPLE_INTERVAL * (System.nanoTime() - sampleStart);
+            }
+            if ( (numberOfEvents & (RunMetrics.PUBLISH_INTERVAL - 1)) == 0 ) {
+                probe.publish(numberOfEvents - publishedEvents, queueSize(), supersededInfections());
+                publishedEvents = numberOfEvents;
+            }
+
+            for (StoppingRule stoppingRule : stoppingRules) {
+                if ( stoppingRule.shouldStop(networkState, numberOfEvents, startNanos) ) {
+                    stoppedBy = stoppingRule.name();
+                    break stepping;
+                }
+            }
+        }
+        probe.experiments++;
+        probe.publish(numberOfEvents - publishedEvents, queueSize(), supersededInfections());
+
+        // Printing to File
+        printOutput.printStoppingRule(experiment, networkState, numberOfEvents, stoppedBy);
+        printOutput.printReactions(experiment, initialState, reactionHistory);
+        printOutput.endExperiment(experiment);
+
+    }
+}
@@ -0,0 +1,34 @@
+// SplitMix64 (Steele, Lea & Flood 2014), the generator of java.util.SplittableRandom: a counter
+// stepping by the golden gamma, hashed by a bijective finalizer. Its value at any index is computed
+// directly (hash), which the network generators use to draw per block or per edge.
+final class SplitMix64 extends RandomStream {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    SplitMix64(long seed){
+        this.state = seed;
+    }
+
+    // Restarts the stream from a seed, e.g. one computed with hash for a single draw, without allocating
+    void setSeed(long seed){
+        this.state = seed;
+    }
+
+    @Override
+    public long nextLong(){
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    // Value at an index of the stream of a seed, the (index + 1)-th nextLong of new SplitMix64(seed)
+    static long hash(long seed, long index){
+        return mix(seed + (index + 1) * GOLDEN_GAMMA);
+    }
+
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Random access to the trajectories written by StateTrajectoryWriter: the state at time t is
+// rebuilt by seeking to the last checkpoint at or before t and replaying at most K deltas. The
+// segments of every experiment are indexed when the file is opened, reading their headers only.
+class StateTrajectoryReader implements AutoCloseable {
+    private final FileChannel file;
+    private final Map<Integer, Segments> segments = new HashMap<>();    // by experiment
+
+    final int N;
+    final int checkpointInterval;
+    final EpidemicModel model;          // compartments and transition targets only
+
+    StateTrajectoryReader(Path path) throws IOException {
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+
+        ByteBuffer header = read(0, StateTrajectoryWriter.HEADER_SIZE);
+        if ( header.getInt() != StateTrajectoryWriter.MAGIC ) {
+            throw new IOException("Not a state trajectory file: " + path);
+        }
+        int version = header.getInt();
+        if ( version != StateTrajectoryWriter.VERSION ) {
+            throw new IOException("Unsupported state trajectory version " + version + ": " + path);
+        }
+        this.N = header.getInt();
+        this.checkpointInterval = header.getInt();
+
+        int modelSize = read(StateTrajectoryWriter.HEADER_SIZE, 4).getInt();
+        this.model = EpidemicModel.readStructure(read(StateTrajectoryWriter.HEADER_SIZE + 4, modelSize));
+
+        // Locating the segments of every experiment
+        long position = StateTrajectoryWriter.HEADER_SIZE + 4 + modelSize;
+        while ( position < file.size() ) {
+            ByteBuffer segmentHeader = read(position, StateTrajectoryWriter.SEGMENT_HEADER_SIZE);
+            int experiment = segmentHeader.getInt();
+            double time = segmentHeader.getDouble();
+            int deltas = segmentHeader.getInt();
+            segments.computeIfAbsent(experiment, exp -> new Segments()).add(time, position, deltas);
+            position += StateTrajectoryWriter.SEGMENT_HEADER_SIZE + N + (long) StateTrajectoryWriter.DELTA_SIZE * deltas;
+        }
+    }
+
+    boolean contains(int experiment){
+        return segments.containsKey(experiment);
+    }
+
+    // State of an experiment at time t, the initial state if t is before the first reaction
+    NetworkState stateAt(int experiment, double t) throws IOException {
+        Segments experimentSegments = segments.get(experiment);
+        if ( experimentSegments == null ) {
+            throw new IllegalArgumentException("Experiment " + experiment + " is not in the trajectory file");
+        }
+
+        // Last checkpoint at or before t (binary search on the checkpoint times)
+        int low = 0;
+        int high = experimentSegments.size - 1;
+        while ( low < high ) {
+            int middle = (low + high + 1) >>> 1;
+            if ( experimentSegments.times[middle] <= t ) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        double checkpointTime = experimentSegments.times[low];
+        long checkpointPosition = experimentSegments.positions[low] + StateTrajectoryWriter.SEGMENT_HEADER_SIZE;
+        int deltas = experimentSegments.deltas[low];
+
+        // Checkpoint
+        ByteBuffer checkpoint = read(checkpointPosition, N);
+        NetworkState networkState = new NetworkState(checkpointTime, N, model);
+        for (int node = 1; node <= N; node++) {
+            networkState.setState(node, checkpoint.get());
+        }
+
+        // Deltas up to t
+        ByteBuffer changes = read(checkpointPosition + N, StateTrajectoryWriter.DELTA_SIZE * deltas);
+        for (int delta = 0; delta < deltas; delta++) {
+            double time = changes.getDouble();
+            if ( time > t ) {
+                break;
+            }
+            networkState.setTime(time);
+            networkState.setState(changes.getInt(), changes.get());
+        }
+        return networkState;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while ( buffer.hasRemaining() ) {
+            if ( file.read(buffer, position + buffer.position()) < 0 ) {
+                throw new IOException("Truncated state trajectory file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Segments of one experiment, in time order
+    private static class Segments {
+        double[] times = new double[4];
+        long[] positions = new long[4];
+        int[] deltas = new int[4];
+        int size = 0;
+
+        void add(double time, long position, int numberOfDeltas){
+            if ( size == times.length ) {
+                times = Arrays.copyOf(times, 2 * size);
+                positions = Arrays.copyOf(positions, 2 * size);
+                deltas = Arrays.copyOf(deltas, 2 * size);
+            }
+            times[size] = time;
+            positions[size] = position;
+            deltas[size] = numberOfDeltas;
+            size++;
+        }
+    }
+}
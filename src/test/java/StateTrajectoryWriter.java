@@ -0,0 +1,147 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Detailed state trajectories as checkpoints plus deltas, instead of one N-column row per reaction.
+// A full snapshot of the network is taken every checkpointInterval reactions and every reaction in
+// between is stored as the single node that changed, so trajectories cost O(N / K + 1) bytes per
+// event and can be kept for large N. Little endian layout:
+//
+//   header (16 bytes): int magic, int version, int N, int checkpoint interval
+//   model: int size in bytes, then the compartments and transitions (EpidemicModel.writeStructure)
+//   segments (16 bytes + N + deltas * 13): int experiment, double checkpoint time, int deltas,
+//                      N compartment bytes, then the deltas
+//   delta (13 bytes):  double time, int node, byte compartment
+//
+// A segment is written as soon as the next checkpoint starts, so an experiment only keeps its
+// current segment in memory. Segments of concurrent experiments interleave, the ones of an
+// experiment are in time order (StateTrajectoryReader indexes them when it opens the file).
+class StateTrajectoryWriter implements OutputSink {
+    static final int MAGIC = 0x53495254;    // "SIRT"
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 16;
+    static final int SEGMENT_HEADER_SIZE = 16;
+    static final int DELTA_SIZE = 13;
+
+    private final AsyncFileWriter writer;
+    private final FileChannel file;
+    private final int N;
+    private final int checkpointInterval;
+    private final Map<Integer, Trajectory> trajectories = new ConcurrentHashMap<>();
+
+    // Checkpoints every checkpointInterval reactions, 0 for defaultCheckpointInterval(N)
+    StateTrajectoryWriter(Path path, int N, int checkpointInterval, EpidemicModel model) throws IOException {
+        this.writer = new AsyncFileWriter(1 << 20, 16);
+        this.file = writer.open(path);
+        this.N = N;
+        this.checkpointInterval = checkpointInterval > 0 ? checkpointInterval : defaultCheckpointInterval(N);
+
+        ByteBuffer header = ByteBuffer.wrap(writer.takeBuffer()).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(N).putInt(this.checkpointInterval);
+
+        int modelSizePosition = header.position();
+        header.putInt(0);
+        model.writeStructure(header);
+        header.putInt(modelSizePosition, header.position() - modelSizePosition - 4);
+        writer.submit(file, header.array(), header.position());
+    }
+
+    // Checkpoints then take at most 4 bytes per reaction, under a third of the deltas, and a state is
+    // rebuilt from at most max(1000, N / 4) deltas
+    static int defaultCheckpointInterval(int N){
+        return Math.max(1000, N / 4);
+    }
+
+    // The first state reported for an experiment is its initial checkpoint, later ones are covered by the deltas
+    @Override
+    public void printNetworkState(int experiment, NetworkState networkState){
+        trajectories.computeIfAbsent(experiment, exp -> {
+            Trajectory trajectory = new Trajectory(experiment);
+            trajectory.checkpoint(networkState);
+            return trajectory;
+        });
+    }
+
+    @Override
+    public void printStateChange(int experiment, NetworkState networkState, int node){
+        Trajectory trajectory = trajectories.get(experiment);
+        if ( trajectory.deltasSinceCheckpoint() == checkpointInterval ) {
+            trajectory.checkpoint(networkState);
+        } else {
+            trajectory.delta(networkState.getTime(), node, networkState.getState(node));
+        }
+    }
+
+    @Override
+    public void printSummarizedNetworkState(int experiment, NetworkState networkState){
+    }
+
+
+    @Override
+    public void endExperiment(int experiment){
+        Trajectory trajectory = trajectories.remove(experiment);
+        if ( trajectory != null ) {
+            trajectory.submitSegment();
+        }
+    }
+
+    @Override
+    public Map<String, Long> bytesWritten(){
+        return writer.bytesWritten();
+    }
+
+    @Override
+    public long writeNanos(){
+        return writer.writeNanos();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    // Current segment of one experiment, filled by the single thread running it
+    private class Trajectory {
+        private final int experiment;
+        private ByteBuffer segment;
+        private int deltas = 0;
+
+        Trajectory(int experiment){
+            this.experiment = experiment;
+        }
+
+        int deltasSinceCheckpoint(){
+            return deltas;
+        }
+
+        // Submits the previous segment and starts the next one with the current state
+        void checkpoint(NetworkState networkState){
+            submitSegment();
+            int size = Math.toIntExact(SEGMENT_HEADER_SIZE + N + (long) DELTA_SIZE * checkpointInterval);
+            byte[] buffer = size <= writer.bufferSize() ? writer.takeBuffer() : new byte[size];
+            segment = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+            segment.putInt(experiment).putDouble(networkState.getTime()).putInt(0);
+            for (int node = 1; node <= N; node++) {
+                segment.put((byte) networkState.getState(node));
+            }
+            deltas = 0;
+        }
+
+        void delta(double time, int node, int compartment){
+            segment.putDouble(time).putInt(node).put((byte) compartment);
+            deltas++;
+        }
+
+        void submitSegment(){
+            if ( segment != null ) {
+                segment.putInt(12, deltas);
+                writer.submit(file, segment.array(), segment.position());
+                segment = null;
+            }
+        }
+    }
+}
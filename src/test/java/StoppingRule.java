@@ -0,0 +1,74 @@
+// Condition ending an experiment before it runs out of reactions. Rules are checked after every
+// event, in order, and the first one that holds is reported as the reason the experiment stopped.
+// They are shared by concurrently running experiments and must not keep state of their own.
+interface StoppingRule {
+    String EXTINCTION = "Extinction";
+
+    // Name reported when the rule stops an experiment
+    String name();
+
+    // networkState is the state after the numberOfEvents-th event of an experiment started at startNanos (System.nanoTime)
+    boolean shouldStop(NetworkState networkState, long numberOfEvents, long startNanos);
+
+    // No node in a compartment that is or will spontaneously become infectious (e.g. I or E)
+    static StoppingRule extinction(){
+        return rule(EXTINCTION, (networkState, numberOfEvents, startNanos) ->
+                networkState.getModel().infectedCount(networkState) == 0);
+    }
+
+    // Stops at the first event after maxTime, the state at maxTime is the one before that event
+    static StoppingRule maxTime(double maxTime){
+        return rule("MaxTime", (networkState, numberOfEvents, startNanos) -> networkState.getTime() > maxTime);
+    }
+
+    static StoppingRule maxEvents(long maxEvents){
+        return rule("MaxEvents", (networkState, numberOfEvents, startNanos) -> numberOfEvents >= maxEvents);
+    }
+
+    // Fraction of nodes in infectious compartments reaching threshold
+    static StoppingRule prevalence(double threshold){
+        return rule("Prevalence", (networkState, numberOfEvents, startNanos) -> {
+            EpidemicModel model = networkState.getModel();
+            long infectious = 0;
+            for (int compartment = 0; compartment < model.numberOfCompartments(); compartment++) {
+                if ( model.infectious[compartment] ) {
+                    infectious += networkState.getCount(compartment);
+                }
+            }
+            return infectious >= threshold * networkState.size();
+        });
+    }
+
+    // Minor outbreak: after the given number of events, fewer than minSize nodes have ever left the
+    // initial compartment (for models where nodes do not return to it)
+    static StoppingRule minorOutbreak(long events, long minSize){
+        return rule("MinorOutbreak", (networkState, numberOfEvents, startNanos) ->
+                numberOfEvents == events
+                        && networkState.size() - networkState.getCount(networkState.getModel().initialCompartment) < minSize);
+    }
+
+    // Wall-clock budget of an experiment, the clock is read every 256 events
+    static StoppingRule wallClock(double seconds){
+        long budget = (long) (seconds * 1e9);
+        return rule("WallClock", (networkState, numberOfEvents, startNanos) ->
+                (numberOfEvents & 0xFF) == 0 && System.nanoTime() - startNanos >= budget);
+    }
+
+    interface Condition {
+        boolean holds(NetworkState networkState, long numberOfEvents, long startNanos);
+    }
+
+    static StoppingRule rule(String name, Condition condition){
+        return new StoppingRule() {
+            @Override
+            public String name(){
+                return name;
+            }
+
+            @Override
+            public boolean shouldStop(NetworkState networkState, long numberOfEvents, long startNanos){
+                return condition.holds(networkState, numberOfEvents, startNanos);
+            }
+        };
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.stream.IntStream;
+
+// Watts-Strogatz small world: a ring where every node links to its k nearest neighbors, each link
+// (i, i + j) being rewired with probability beta to (i, uniformly picked node other than i).
+// Blocks of nodes are rewired in parallel, each one from its own stream derived from the seed.
+// Rewired links that duplicate an existing one are dropped.
+class WattsStrogatzGenerator implements NetworkGenerator {
+    private final int N;
+    private final int k;
+    private final double beta;
+
+    WattsStrogatzGenerator(int N, int k, double beta){
+        if ( k < 2 || k % 2 != 0 || k >= N ) {
+            throw new IllegalArgumentException("Watts-Strogatz networks need an even k in [2, N), got " + k);
+        }
+        this.N = N;
+        this.k = k;
+        this.beta = beta;
+    }
+
+    @Override
+    public ContactNetwork generate(long seed){
+        EdgeList[] parts = new EdgeList[NetworkGenerator.blocks(N)];
+        IntStream.range(0, parts.length).parallel().forEach(block -> {
+            RandomStream random = RandomStream.create(RandomType.SplitMix64, seed, block);
+            EdgeList edges = new EdgeList();
+            int last = (int) Math.min(N, (long) (block + 1) * BLOCK_SIZE);
+            for (int i = block * BLOCK_SIZE + 1; i <= last; i++) {
+                for (int j = 1; j <= k / 2; j++) {
+                    int target = (i - 1 + j) % N + 1;
+                    if ( random.nextDouble() < beta ) {
+                        do {
+                            target = 1 + random.nextInt(N);
+                        } while ( target == i );
+                    }
+                    edges.add(i, target);
+                }
+            }
+            parts[block] = edges;
+        });
+        return EdgeList.toSimpleNetwork(N, parts);
+    }
+}
@@ -0,0 +1,30 @@
+// xoshiro256** (Blackman & Vigna 2018): four words of xor/shift/rotate state and a multiplicative
+// scrambler, period 2^256 - 1, passes BigCrush. The state is filled by a SplitMix64 of the seed,
+// as its authors recommend, so it is never all zero and nearby seeds give unrelated streams.
+final class Xoshiro256StarStar extends RandomStream {
+    private long s0;
+    private long s1;
+    private long s2;
+    private long s3;
+
+    Xoshiro256StarStar(long seed){
+        SplitMix64 seeder = new SplitMix64(seed);
+        this.s0 = seeder.nextLong();
+        this.s1 = seeder.nextLong();
+        this.s2 = seeder.nextLong();
+        this.s3 = seeder.nextLong();
+    }
+
+    @Override
+    public long nextLong(){
+        long result = Long.rotateLeft(s1 * 5, 7) * 9;
+        long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        return result;
+    }
+}